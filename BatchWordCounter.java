@@ -0,0 +1,421 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BinaryOperator;
+import java.util.stream.Stream;
+
+/**
+  * BatchWordCounter
+  * Counts the words of many files on a fixed pool of worker threads. Files are given
+  * as paths, directories (searched recursively) or glob patterns. Small files are
+  * grouped into batches of about BATCH_SIZE bytes so each task is worth scheduling,
+  * and files larger than SPLIT_SIZE are split into byte ranges that MappedWordCounter
+  * counts independently, since it gives every word to the range it begins in.
+  *
+  * The result is one table for all the files and, if asked for, the top words of each
+  * file. Partial tables are merged on the calling thread as tasks finish.
+  */
+
+public class BatchWordCounter {
+	/** Small files are batched together until a task holds this many bytes. */
+	private static final long BATCH_SIZE = 4L * 1024 * 1024;
+	/** Files larger than this are split into ranges of this size. */
+	private static final long SPLIT_SIZE = 64L * 1024 * 1024;
+	private static final BinaryOperator<Integer> SUM = new BinaryOperator<Integer>() {
+		public Integer apply(Integer a, Integer b) {
+			return a + b;
+		}
+	};
+
+	private int workers;
+	private int per_file_k;
+	private long token_count;
+	private long byte_count;
+	private int file_count;
+	private long elapsed_nanos;
+
+	/** Creates a counter that keeps only the table of all files. */
+	public BatchWordCounter(int workers) {
+		this(workers, -1);
+	}
+
+	/** Creates a counter that also keeps the top per_file_k words of every file, or
+	  * every word of every file if per_file_k is 0.
+	  */
+	public BatchWordCounter(int workers, int per_file_k) {
+		if (workers <= 0) {
+			throw new IllegalArgumentException("workers must be positive: " + workers);
+		}
+		this.workers = workers;
+		this.per_file_k = per_file_k;
+		token_count = 0;
+		byte_count = 0;
+		file_count = 0;
+		elapsed_nanos = 0;
+	}
+
+	/** The word count and top words of one file. */
+	public static class FileCount {
+		private Path path;
+		private long tokens;
+		private ArrayList<DictPair<String, Integer>> top;
+
+		private FileCount(Path path, long tokens, ArrayList<DictPair<String, Integer>> top) {
+			this.path = path;
+			this.tokens = tokens;
+			this.top = top;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		/** Gets the number of words in the file. */
+		public long getTokenCount() {
+			return tokens;
+		}
+
+		/** Gets the file's top words, ranked. */
+		public ArrayList<DictPair<String, Integer>> getTop() {
+			return top;
+		}
+	}
+
+	/** What one task counted: a table, and if per-file tables are kept, which file
+	  * it came from. A batch of whole files reports their FileCounts directly.
+	  */
+	private static class TaskResult {
+		private CounterDictionary words;
+		private long tokens;
+		private int file_index;
+		private ArrayList<FileCount> files;
+
+		private TaskResult(CounterDictionary words, long tokens, int file_index) {
+			this.words = words;
+			this.tokens = tokens;
+			this.file_index = file_index;
+			files = new ArrayList<FileCount>();
+		}
+	}
+
+	/** Expands paths, directories and glob patterns into a sorted list of regular files.
+	  * @throws IOException if a path does not exist or a directory cannot be read.
+	  */
+	public static ArrayList<Path> expand(String[] patterns) throws IOException {
+		ArrayList<Path> files = new ArrayList<Path>();
+		for (int i = 0; i < patterns.length; i++) {
+			String pattern = patterns[i];
+			if (isGlob(pattern)) {
+				addMatches(pattern, files);
+				continue;
+			}
+			Path path = Paths.get(pattern);
+			if (Files.isDirectory(path)) {
+				addDirectory(path, files);
+			} else if (Files.isRegularFile(path)) {
+				files.add(path);
+			} else {
+				throw new IOException("No such file or directory: " + pattern);
+			}
+		}
+		return files;
+	}
+
+	private static boolean isGlob(String pattern) {
+		return firstGlobChar(pattern) >= 0;
+	}
+
+	/** Gets the index of the first glob character of a pattern, or -1 if it has none. */
+	private static int firstGlobChar(String pattern) {
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '*' || c == '?' || c == '[' || c == '{') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** Adds every regular file under a directory, in sorted order. */
+	private static void addDirectory(Path directory, ArrayList<Path> files) throws IOException {
+		ArrayList<Path> found = new ArrayList<Path>();
+		Stream<Path> walk = Files.walk(directory);
+		try {
+			Object[] paths = walk.toArray();
+			for (int i = 0; i < paths.length; i++) {
+				if (Files.isRegularFile((Path) paths[i])) {
+					found.add((Path) paths[i]);
+				}
+			}
+		} finally {
+			walk.close();
+		}
+		Collections.sort(found);
+		files.addAll(found);
+	}
+
+	/** Adds every regular file matching a glob. The search starts at the deepest
+	  * directory of the pattern that has no glob characters.
+	  */
+	private static void addMatches(String pattern, ArrayList<Path> files) throws IOException {
+		int last_plain = pattern.lastIndexOf(File.separatorChar, firstGlobChar(pattern)) + 1;
+		Path base = last_plain == 0 ? Paths.get(".") : Paths.get(pattern.substring(0, last_plain));
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+		ArrayList<Path> candidates = new ArrayList<Path>();
+		if (Files.isDirectory(base)) {
+			addDirectory(base, candidates);
+		}
+		int matched = 0;
+		for (int i = 0; i < candidates.size(); i++) {
+			Path candidate = candidates.get(i);
+			if (last_plain == 0) {
+				candidate = base.relativize(candidate);
+			}
+			if (matcher.matches(candidate)) {
+				files.add(candidate);
+				matched++;
+			}
+		}
+		if (matched == 0) {
+			throw new IOException("No files match " + pattern);
+		}
+	}
+
+	/** Counts every word of one range of a file. */
+	private TaskResult countRange(Path path, int file_index, long start, long end) throws IOException {
+		FileChannel channel = new RandomAccessFile(path.toFile(), "r").getChannel();
+		try {
+			MappedWordCounter counter = new MappedWordCounter();
+			long tokens = counter.count(channel, start, end);
+			return new TaskResult(counter.toDictionary(), tokens, file_index);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/** Counts a batch of whole files into one table, keeping each file's top words
+	  * if per-file tables were asked for.
+	  */
+	private TaskResult countBatch(ArrayList<Path> batch) throws IOException {
+		MappedWordCounter counter = new MappedWordCounter();
+		TaskResult result = new TaskResult(null, 0, -1);
+		for (int i = 0; i < batch.size(); i++) {
+			Path path = batch.get(i);
+			FileChannel channel = new RandomAccessFile(path.toFile(), "r").getChannel();
+			try {
+				if (per_file_k < 0) {
+					result.tokens += counter.countFile(channel);
+				} else {
+					/** Each file needs its own table, which is then merged into the batch's. */
+					MappedWordCounter file_counter = new MappedWordCounter();
+					long tokens = file_counter.countFile(channel);
+					CounterDictionary words = file_counter.toDictionary();
+					result.files.add(new FileCount(path, tokens, select(words)));
+					if (result.words == null) {
+						result.words = new OpenHashCounterDictionary();
+					}
+					result.words.mergeAll(words, SUM);
+					result.tokens += tokens;
+				}
+			} finally {
+				channel.close();
+			}
+		}
+		if (result.words == null) {
+			result.words = counter.toDictionary();
+		}
+		return result;
+	}
+
+	private ArrayList<DictPair<String, Integer>> select(Dictionary<String, Integer> words) {
+		TopKSelector selector = per_file_k == 0 ? new TopKSelector() : new TopKSelector(per_file_k);
+		return selector.select(words);
+	}
+
+	/** Counts every file and returns the table of all of them. Per-file results are
+	  * added to per_file, in the order of the files, if it is not null.
+	  */
+	public CounterDictionary countFiles(final ArrayList<Path> files, ArrayList<FileCount> per_file)
+	throws IOException {
+		long started = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		ArrayList<Future<TaskResult>> tasks = new ArrayList<Future<TaskResult>>();
+		/** Split files are merged here before their top words are selected. */
+		CounterDictionary[] split_words = new CounterDictionary[files.size()];
+		long[] split_tokens = new long[files.size()];
+		try {
+			ArrayList<Path> batch = new ArrayList<Path>();
+			long batch_bytes = 0;
+			for (int i = 0; i < files.size(); i++) {
+				final Path path = files.get(i);
+				final int file_index = i;
+				long size = Files.size(path);
+				byte_count += size;
+				if (size > SPLIT_SIZE) {
+					for (long start = 0; start < size; start += SPLIT_SIZE) {
+						final long range_start = start;
+						final long range_end = Math.min(size, start + SPLIT_SIZE);
+						tasks.add(pool.submit(new Callable<TaskResult>() {
+							public TaskResult call() throws IOException {
+								return countRange(path, file_index, range_start, range_end);
+							}
+						}));
+					}
+					continue;
+				}
+				batch.add(path);
+				batch_bytes += size;
+				if (batch_bytes >= BATCH_SIZE) {
+					tasks.add(submitBatch(pool, batch));
+					batch = new ArrayList<Path>();
+					batch_bytes = 0;
+				}
+			}
+			if (!batch.isEmpty()) {
+				tasks.add(submitBatch(pool, batch));
+			}
+
+			CounterDictionary total = null;
+			ArrayList<FileCount> whole_files = new ArrayList<FileCount>();
+			for (int i = 0; i < tasks.size(); i++) {
+				TaskResult result = tasks.get(i).get();
+				token_count += result.tokens;
+				whole_files.addAll(result.files);
+				if (per_file != null && result.file_index >= 0) {
+					int index = result.file_index;
+					if (split_words[index] == null) {
+						split_words[index] = new OpenHashCounterDictionary();
+					}
+					split_words[index].mergeAll(result.words, SUM);
+					split_tokens[index] += result.tokens;
+				}
+				/** Merges the smaller table into the larger one. */
+				if (total == null) {
+					total = result.words;
+				} else if (total.size() < result.words.size()) {
+					result.words.mergeAll(total, SUM);
+					total = result.words;
+				} else {
+					total.mergeAll(result.words, SUM);
+				}
+			}
+			if (per_file != null) {
+				int next_whole = 0;
+				for (int i = 0; i < files.size(); i++) {
+					if (split_words[i] != null) {
+						per_file.add(new FileCount(files.get(i), split_tokens[i], select(split_words[i])));
+					} else if (next_whole < whole_files.size()) {
+						per_file.add(whole_files.get(next_whole++));
+					}
+				}
+			}
+			file_count += files.size();
+			elapsed_nanos += System.nanoTime() - started;
+			return total == null ? new OpenHashCounterDictionary() : total;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while counting");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private Future<TaskResult> submitBatch(ExecutorService pool, final ArrayList<Path> batch) {
+		return pool.submit(new Callable<TaskResult>() {
+			public TaskResult call() throws IOException {
+				return countBatch(batch);
+			}
+		});
+	}
+
+	/** Gets the total number of words counted so far. */
+	public long getTokenCount() {
+		return token_count;
+	}
+
+	/** Gets the total size of the files counted so far, in bytes. */
+	public long getByteCount() {
+		return byte_count;
+	}
+
+	public int getFileCount() {
+		return file_count;
+	}
+
+	/** Gets the time spent counting, in nanoseconds. */
+	public long getElapsedNanos() {
+		return elapsed_nanos;
+	}
+
+	/** Checks that the total and per-file counts of files whose words are separated
+	  * by ASCII and other whitespace match Tokenizer's, whether the files are counted
+	  * one per task or together in a batch.
+	  */
+	public static void main(String[] args) throws IOException {
+		String[] spaces = {" ", "\n", "-", "\u2003", "\u3000", "\u1680", "\u00a0"};
+		String[] words = {"foo", "Bar", "baz", "caf\u00e9", "qux"};
+		Random random = new Random(5);
+		Path directory = Files.createTempDirectory("batch");
+		ArrayList<Path> files = new ArrayList<Path>();
+		SymbolCounter expected = new SymbolCounter();
+		long[] expected_tokens = new long[8];
+		for (int i = 0; i < expected_tokens.length; i++) {
+			StringBuilder text = new StringBuilder();
+			for (int w = 0; w < 1000; w++) {
+				text.append(words[random.nextInt(words.length)]).append(spaces[random.nextInt(spaces.length)]);
+			}
+			Path file = directory.resolve("file-" + i + ".txt");
+			Files.write(file, text.toString().getBytes(StandardCharsets.UTF_8));
+			files.add(file);
+			expected_tokens[i] = new Tokenizer().tokenize(new StringReader(text.toString()), expected);
+		}
+		int bad = 0;
+		for (int workers = 1; workers <= 3; workers += 2) {
+			BatchWordCounter counter = new BatchWordCounter(workers, 0);
+			ArrayList<FileCount> per_file = new ArrayList<FileCount>();
+			CounterDictionary total = counter.countFiles(files, per_file);
+			if (total.size() != expected.size() || per_file.size() != files.size()) {
+				bad++;
+			}
+			Iterator<String> keys = expected.getKeySet().iterator();
+			while (keys.hasNext()) {
+				String word = keys.next();
+				if (total.getCount(word) != expected.getCount(word)) {
+					bad++;
+				}
+			}
+			for (int i = 0; i < per_file.size(); i++) {
+				if (per_file.get(i).getTokenCount() != expected_tokens[i]) {
+					bad++;
+				}
+			}
+		}
+		for (int i = 0; i < files.size(); i++) {
+			Files.delete(files.get(i));
+		}
+		Files.delete(directory);
+		System.out.println(bad);
+	}
+}
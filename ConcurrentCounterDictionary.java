@@ -0,0 +1,255 @@
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * ConcurrentCounterDictionary
+  * A thread-safe dictionary from words to counts for many threads counting into one
+  * shared table. Keys are striped by hash over a fixed number of segments, each an
+  * OpenHashCounterDictionary guarded by its own lock, so threads only contend when
+  * their words land in the same segment. A segment grows while holding only its own
+  * lock, so a resize never stops threads that are counting in the other segments.
+  * The resize itself is not incremental: the growing segment is rehashed all at
+  * once, and threads whose words land in it wait for the rehash, which moves about
+  * 1 / segments of the entries. A dictionary created with the expected number of
+  * words sizes its segments up front and never resizes if the estimate holds.
+  *
+  * Operations on a single key are atomic. size, getKeySet and getEntrySet visit the
+  * segments one at a time and are not a snapshot if other threads keep counting.
+  */
+
+public class ConcurrentCounterDictionary implements CounterDictionary {
+	private static final int DEFAULT_SEGMENTS = 64;
+
+	private OpenHashCounterDictionary[] segments;
+	private int segment_mask;
+
+	public ConcurrentCounterDictionary() {
+		this(DEFAULT_SEGMENTS);
+	}
+
+	/** Creates a dictionary with at least the given number of lock stripes. */
+	public ConcurrentCounterDictionary(int concurrency) {
+		this(concurrency, 0);
+	}
+
+	/** Creates a dictionary with at least the given number of lock stripes, whose
+	  * segments hold expected_words words between them without growing.
+	  */
+	public ConcurrentCounterDictionary(int concurrency, int expected_words) {
+		int count = 1;
+		while (count < concurrency) {
+			count *= 2;
+		}
+		segments = new OpenHashCounterDictionary[count];
+		for (int i = 0; i < count; i++) {
+			if (expected_words > 0) {
+				/** Leaves room for segments that get more than their share. */
+				segments[i] = OpenHashCounterDictionary.withExpectedSize(expected_words / count * 5 / 4 + 1);
+			} else {
+				segments[i] = new OpenHashCounterDictionary();
+			}
+		}
+		segment_mask = count - 1;
+	}
+
+	/** Takes a key and returns the segment that holds it. The segment index comes from
+	  * the low bits of the hash, while a segment places keys using its high bits.
+	  */
+	private OpenHashCounterDictionary segmentFor(String key) {
+		int hash = key.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & segment_mask];
+	}
+
+	/** Adds delta to the count of a word, adding the word with a count of delta
+	  * if it is not in the dictionary.
+	  * @return The new count of the word.
+	  */
+	public int addTo(String key, int delta) {
+		OpenHashCounterDictionary segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.addTo(key, delta);
+		}
+	}
+
+	/** Adds one to the count of a word.
+	  * @return The new count of the word.
+	  */
+	public int increment(String key) {
+		return addTo(key, 1);
+	}
+
+	/** Gets the count of a word, or 0 if it is not in the dictionary. */
+	public int getCount(String key) {
+		OpenHashCounterDictionary segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.getCount(key);
+		}
+	}
+
+	public Integer add(String key, Integer value) {
+		OpenHashCounterDictionary segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.add(key, value);
+		}
+	}
+
+	public Integer remove(String key) {
+		OpenHashCounterDictionary segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.remove(key);
+		}
+	}
+
+	public Integer getValue(String key) {
+		OpenHashCounterDictionary segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.getValue(key);
+		}
+	}
+
+	public boolean contains(String key) {
+		OpenHashCounterDictionary segment = segmentFor(key);
+		synchronized (segment) {
+			return segment.contains(key);
+		}
+	}
+
+	/** Returns a Set that contains all the keys stored in the dictionary. */
+	public Set<String> getKeySet() {
+		Set<String> keys = new JavaSetWrapper<String>();
+		for (int i = 0; i < segments.length; i++) {
+			Set<String> segment_keys;
+			synchronized (segments[i]) {
+				segment_keys = segments[i].getKeySet();
+			}
+			Iterator<String> iterator = segment_keys.iterator();
+			while (iterator.hasNext()) {
+				keys.add(iterator.next());
+			}
+		}
+		return keys;
+	}
+
+	/** Returns a Set of the key-value pairs stored in the dictionary. */
+	public Set<DictPair<String, Integer>> getEntrySet() {
+		Set<DictPair<String, Integer>> pairs = new JavaSetWrapper<DictPair<String, Integer>>();
+		for (int i = 0; i < segments.length; i++) {
+			Set<DictPair<String, Integer>> segment_pairs;
+			synchronized (segments[i]) {
+				segment_pairs = segments[i].getEntrySet();
+			}
+			Iterator<DictPair<String, Integer>> iterator = segment_pairs.iterator();
+			while (iterator.hasNext()) {
+				pairs.add(iterator.next());
+			}
+		}
+		return pairs;
+	}
+
+	/** Passes every entry to action. Each segment is locked while its entries are
+	  * visited, so action must not update this dictionary.
+	  */
+	public void forEachEntry(BiConsumer<? super String, ? super Integer> action) {
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				segments[i].forEachEntry(action);
+			}
+		}
+	}
+
+	/** Passes every word and its count to action. Each segment is locked while its
+	  * entries are visited, so action must not update this dictionary.
+	  */
+	public void forEachCount(ObjIntConsumer<? super String> action) {
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				segments[i].forEachCount(action);
+			}
+		}
+	}
+
+	/** Adds every entry of another dictionary to this dictionary. Each key is merged
+	  * atomically, but other threads may see some keys merged before others.
+	  */
+	public void mergeAll(Dictionary<String, Integer> other, final BinaryOperator<Integer> combiner) {
+		other.forEachEntry(new BiConsumer<String, Integer>() {
+			public void accept(String key, Integer value) {
+				OpenHashCounterDictionary segment = segmentFor(key);
+				synchronized (segment) {
+					Integer existing_value = segment.getValue(key);
+					if (existing_value == null) {
+						segment.add(key, value);
+					} else {
+						segment.add(key, combiner.apply(existing_value, value));
+					}
+				}
+			}
+		});
+	}
+
+	/** Gets the size of this dictionary. */
+	public int size() {
+		int total = 0;
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				total += segments[i].size();
+			}
+		}
+		return total;
+	}
+
+	/** Sees whether this dictionary is empty. */
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/** Removes all entries from this dictionary. */
+	public void clear() {
+		for (int i = 0; i < segments.length; i++) {
+			synchronized (segments[i]) {
+				segments[i].clear();
+			}
+		}
+	}
+
+	/** Checks that threads incrementing the same keys at once, through segments that
+	  * grow while they count, lose no increments, and prints the number of wrong
+	  * counts.
+	  */
+	public static void main(String[] args) throws InterruptedException {
+		final int threads = 8;
+		final int increments = 200000;
+		final int keys = 50000;
+		int bad = 0;
+		for (int presized = 0; presized < 2; presized++) {
+			final ConcurrentCounterDictionary counts = new ConcurrentCounterDictionary(16, presized * keys);
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				final int first = t;
+				workers[t] = new Thread(new Runnable() {
+					public void run() {
+						for (int i = 0; i < increments; i++) {
+							counts.increment("w" + (i + first * 6007) % keys);
+						}
+					}
+				});
+				workers[t].start();
+			}
+			for (int t = 0; t < threads; t++) {
+				workers[t].join();
+			}
+			/** Every thread visits every key increments / keys times. */
+			if (counts.size() != keys) {
+				bad++;
+			}
+			for (int k = 0; k < keys; k++) {
+				if (counts.getCount("w" + k) != threads * (increments / keys)) {
+					bad++;
+				}
+			}
+		}
+		System.out.println(bad);
+	}
+}
@@ -0,0 +1,113 @@
+/**
+  * CountMinSketch
+  * Estimates how many times each word was counted using a fixed amount of memory,
+  * however many distinct words there are. The sketch is a table of depth rows of
+  * width counters; a word adds to one counter in every row and its estimate is the
+  * smallest of those counters.
+  *
+  * An estimate is never below the true count. With width w and depth d, after N words
+  * an estimate exceeds the true count by more than (e / w) * N with probability at
+  * most e^-d. The row of a word is chosen by double hashing two seeded Murmur3 hashes
+  * of its characters, so the rows do not share the collisions of String.hashCode.
+  */
+
+public class CountMinSketch {
+	private static final int SEED_A = 0x2545F491;
+	private static final int SEED_B = 0x6C8E9CF5;
+
+	private int width;
+	private int depth;
+	private int[] table;
+	private long total;
+	private HashStrategy hash_a;
+	private HashStrategy hash_b;
+
+	public CountMinSketch(int width, int depth) {
+		if (width <= 0 || depth <= 0) {
+			throw new IllegalArgumentException("width and depth must be positive: " + width + ", " + depth);
+		}
+		if ((long) width * depth > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("sketch too large: " + width + " x " + depth);
+		}
+		this.width = width;
+		this.depth = depth;
+		table = new int[width * depth];
+		total = 0;
+		hash_a = new SeededHashStrategy(SEED_A);
+		hash_b = new SeededHashStrategy(SEED_B);
+	}
+
+	/** Creates a sketch whose estimates exceed the true count by more than
+	  * epsilon * N with probability at most delta.
+	  */
+	public static CountMinSketch withErrorBounds(double epsilon, double delta) {
+		int width = (int) Math.ceil(Math.E / epsilon);
+		int depth = (int) Math.ceil(Math.log(1 / delta));
+		return new CountMinSketch(width, Math.max(1, depth));
+	}
+
+	/** Creates the widest sketch of the given depth that fits in the given number of
+	  * bytes.
+	  */
+	public static CountMinSketch withMemory(long bytes, int depth) {
+		long width = bytes / (4L * depth);
+		return new CountMinSketch((int) Math.max(1, Math.min(width, Integer.MAX_VALUE / depth)), depth);
+	}
+
+	/** Adds delta to the count of a word.
+	  * @return The new estimate of the word's count.
+	  */
+	public int add(String word, int delta) {
+		int h1 = hash_a.hash(word);
+		int h2 = hash_b.hash(word) | 1;
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			int index = row * width + Math.floorMod(h1 + row * h2, width);
+			table[index] += delta;
+			estimate = Math.min(estimate, table[index]);
+		}
+		total += delta;
+		return estimate;
+	}
+
+	/** Gets the estimated count of a word. The estimate is never below the true count. */
+	public int estimate(String word) {
+		int h1 = hash_a.hash(word);
+		int h2 = hash_b.hash(word) | 1;
+		int estimate = Integer.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			estimate = Math.min(estimate, table[row * width + Math.floorMod(h1 + row * h2, width)]);
+		}
+		return estimate;
+	}
+
+	/** Gets the sum of every count added, N in the error bound. */
+	public long getTotal() {
+		return total;
+	}
+
+	/** Gets epsilon, the bound on an estimate's error as a fraction of getTotal(). */
+	public double getEpsilon() {
+		return Math.E / width;
+	}
+
+	/** Gets delta, the probability that an estimate is off by more than
+	  * getEpsilon() * getTotal().
+	  */
+	public double getDelta() {
+		return Math.exp(-depth);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/** Gets the memory used by the counters, in bytes. */
+	public long getMemoryBytes() {
+		return 4L * table.length;
+	}
+}
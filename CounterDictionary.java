@@ -0,0 +1,28 @@
+import java.util.function.ObjIntConsumer;
+
+/**
+ * A Dictionary from words to counts that can update a count in place.
+ */
+public interface CounterDictionary extends Dictionary<String, Integer> {
+    /** Adds one to the count of a word, adding the word with a count of 1 if it
+     * is not in the dictionary.
+     * @return The new count of the word.
+     */
+    public int increment(String key);
+    
+    /** Adds delta to the count of a word, adding the word with a count of delta
+     * if it is not in the dictionary.
+     * @return The new count of the word.
+     */
+    public int addTo(String key, int delta);
+    
+    /** Gets the count of a word.
+     * @return The count of the word, or 0 if it is not in the dictionary.
+     */
+    public int getCount(String key);
+    
+    /** Passes every word and its count to action, like forEachEntry but without
+     * boxing the counts.
+     */
+    public void forEachCount(ObjIntConsumer<? super String> action);
+}
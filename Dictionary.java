@@ -1,3 +1,6 @@
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+
 /** 
  * An interface for the Dictionary ADT.
  * @author Jadrian Miles
@@ -38,6 +41,20 @@ public interface Dictionary<K, V> {
     /** Returns a Set of the key-value pairs stored in the dictionary. */
     public Set<DictPair<K, V>> getEntrySet();
     
+    /** Passes every key and its value to action, in no particular order, without
+     * copying the entries into a Set. The dictionary must not be changed while
+     * this runs.
+     */
+    public void forEachEntry(BiConsumer<? super K, ? super V> action);
+    
+    /** Adds every entry of another dictionary to this dictionary. If a key is
+     * in both dictionaries, its value becomes combiner.apply(this value,
+     * other value).
+     * @param other The dictionary whose entries are added.
+     * @param combiner Combines the two values of a key found in both.
+     */
+    public void mergeAll(Dictionary<K, V> other, BinaryOperator<V> combiner);
+    
     /** Gets the size of this dictionary. */
     public int size();
     
@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+  * FollowInputStream
+  * Reads a file that is still being written, like tail -f. When the reader reaches the
+  * end of the file it waits and tries again instead of reporting the end of the
+  * stream. If the file becomes shorter than what has been read, it is assumed to have
+  * been truncated (for example by log rotation) and is read again from the start.
+  */
+
+public class FollowInputStream extends InputStream {
+	private static final long POLL_MILLIS = 200;
+
+	private RandomAccessFile file;
+
+	public FollowInputStream(String path) throws IOException {
+		file = new RandomAccessFile(path, "r");
+	}
+
+	public int read() throws IOException {
+		byte[] one = new byte[1];
+		int read = read(one, 0, 1);
+		if (read < 0) {
+			return -1;
+		}
+		return one[0] & 0xFF;
+	}
+
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		int read = file.read(buffer, offset, length);
+		while (read < 0) {
+			if (file.length() < file.getFilePointer()) {
+				file.seek(0);
+			} else {
+				try {
+					Thread.sleep(POLL_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return -1;
+				}
+			}
+			read = file.read(buffer, offset, length);
+		}
+		return read;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+}
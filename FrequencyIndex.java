@@ -0,0 +1,522 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+  * FrequencyIndex
+  * A counted dictionary saved to disk, so text is counted once and its counts can be
+  * reloaded or combined later without reading the text again. The file holds:
+  *
+  *     header   magic "WFIX", version, total word count n, entry count,
+  *              restart interval, offset and number of restart points
+  *     entries  sorted by the unsigned bytes of the UTF-8 word, each written as
+  *              varint shared prefix length, varint suffix length, suffix bytes,
+  *              varint count
+  *     restarts the offset of every restart-interval-th entry, which is written
+  *              with no shared prefix so a lookup can binary search the restarts
+  *
+  * An index is opened by memory-mapping it, and indexes of several runs are merged
+  * entry by entry in one pass over each, so a merge never holds a full vocabulary.
+  */
+
+public class FrequencyIndex implements Closeable {
+	private static final int MAGIC = 0x57464958;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 36;
+	public static final int DEFAULT_RESTART_INTERVAL = 16;
+
+	private String path;
+	private FileChannel channel;
+	private MappedByteBuffer buffer;
+	private long n;
+	private int num_entries;
+	private int restart_interval;
+	private int restarts_offset;
+	private int restart_count;
+
+	private FrequencyIndex(String path) throws IOException {
+		this.path = path;
+		channel = new RandomAccessFile(path, "r").getChannel();
+		long size = channel.size();
+		if (size > Integer.MAX_VALUE) {
+			channel.close();
+			throw new IOException("Index too large to map: " + path);
+		}
+		if (size < HEADER_SIZE) {
+			channel.close();
+			throw new IOException("Not a frequency index: " + path);
+		}
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			channel.close();
+			throw new IOException("Not a frequency index: " + path);
+		}
+		n = buffer.getLong(8);
+		num_entries = buffer.getInt(16);
+		restart_interval = buffer.getInt(20);
+		restarts_offset = (int) buffer.getLong(24);
+		restart_count = buffer.getInt(32);
+	}
+
+	/** Memory-maps a saved index. */
+	public static FrequencyIndex open(String path) throws IOException {
+		return new FrequencyIndex(path);
+	}
+
+	/** Saves a counted dictionary and the number of words counted into it. */
+	public static void save(Dictionary<String, Integer> d, long n, String path) throws IOException {
+		final byte[][] keys = new byte[d.size()][];
+		final int[] counts = new int[keys.length];
+		final Integer[] order = new Integer[keys.length];
+		d.forEachEntry(new BiConsumer<String, Integer>() {
+			private int i = 0;
+			public void accept(String word, Integer count) {
+				keys[i] = word.getBytes(StandardCharsets.UTF_8);
+				counts[i] = count;
+				order[i] = i;
+				i++;
+			}
+		});
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Arrays.compareUnsigned(keys[a], keys[b]);
+			}
+		});
+		Writer writer = new Writer(path);
+		boolean complete = false;
+		try {
+			for (int i = 0; i < order.length; i++) {
+				writer.add(keys[order[i]], keys[order[i]].length, counts[order[i]]);
+			}
+			writer.setTokenCount(n);
+			writer.close();
+			complete = true;
+		} finally {
+			if (!complete) {
+				writer.abort();
+			}
+		}
+	}
+
+	/** Merges saved indexes into a new index, adding the counts of words that are in
+	  * more than one and the word totals of all of them.
+	  */
+	public static void merge(String[] input_paths, String output_path) throws IOException {
+		merge(input_paths, output_path, -1);
+	}
+
+	/** Merges saved indexes like merge(input_paths, output_path), but with n as the
+	  * word total of the new index, or the sum of theirs if n is negative. If the merge
+	  * fails, no output is left behind.
+	  * @throws IOException if the output is one of the inputs, which opening it for
+	  * writing would truncate while it is mapped, or if an index cannot be read or
+	  * written.
+	  * @throws ArithmeticException if a summed count does not fit in an int.
+	  */
+	public static void merge(String[] input_paths, String output_path, long n) throws IOException {
+		Path output = Paths.get(output_path);
+		for (int i = 0; i < input_paths.length; i++) {
+			if (Files.exists(output) && Files.isSameFile(output, Paths.get(input_paths[i]))) {
+				throw new IOException("Merge output is also an input: " + output_path);
+			}
+		}
+		FrequencyIndex[] inputs = openAll(input_paths);
+		try {
+			Writer writer = new Writer(output_path);
+			boolean complete = false;
+			try {
+				MergedCursor cursor = new MergedCursor(inputs);
+				while (cursor.next()) {
+					writer.add(cursor.key, cursor.key_length, cursor.count);
+				}
+				writer.setTokenCount(n < 0 ? cursor.getTokenCount() : n);
+				writer.close();
+				complete = true;
+			} finally {
+				if (!complete) {
+					writer.abort();
+				}
+			}
+		} finally {
+			closeAll(inputs);
+		}
+	}
+
+	/** Opens every index, closing the ones already open if one fails. */
+	public static FrequencyIndex[] openAll(String[] paths) throws IOException {
+		FrequencyIndex[] indexes = new FrequencyIndex[paths.length];
+		try {
+			for (int i = 0; i < paths.length; i++) {
+				indexes[i] = open(paths[i]);
+			}
+		} catch (IOException e) {
+			closeAll(indexes);
+			throw e;
+		}
+		return indexes;
+	}
+
+	public static void closeAll(FrequencyIndex[] indexes) throws IOException {
+		for (int i = 0; i < indexes.length; i++) {
+			if (indexes[i] != null) {
+				indexes[i].close();
+			}
+		}
+	}
+
+	/** Gets the number of words counted into this index, the n used for frequencies. */
+	public long getTokenCount() {
+		return n;
+	}
+
+	/** Gets the number of distinct words in this index. */
+	public int size() {
+		return num_entries;
+	}
+
+	/** Returns a cursor over the entries in sorted order. */
+	public Cursor cursor() {
+		return new Cursor(this);
+	}
+
+	/** Gets the count of a word, or 0 if it is not in the index. Binary searches the
+	  * restart points and then scans at most one restart interval.
+	  */
+	public int getCount(String word) {
+		byte[] target = word.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = restart_count - 1;
+		int block = -1;
+		Cursor cursor = new Cursor(this);
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			cursor.seekRestart(middle);
+			cursor.next();
+			int compared = Arrays.compareUnsigned(cursor.key, 0, cursor.key_length, target, 0, target.length);
+			if (compared == 0) {
+				return cursor.count;
+			} else if (compared < 0) {
+				block = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		if (block < 0) {
+			return 0;
+		}
+		cursor.seekRestart(block);
+		for (int i = 0; i < restart_interval && cursor.next(); i++) {
+			int compared = Arrays.compareUnsigned(cursor.key, 0, cursor.key_length, target, 0, target.length);
+			if (compared == 0) {
+				return cursor.count;
+			} else if (compared > 0) {
+				return 0;
+			}
+		}
+		return 0;
+	}
+
+	/** Loads every entry into a counter dictionary. */
+	public CounterDictionary toDictionary() {
+		CounterDictionary words = OpenHashCounterDictionary.withExpectedSize(num_entries);
+		Cursor cursor = cursor();
+		while (cursor.next()) {
+			words.add(cursor.getWord(), cursor.getCount());
+		}
+		return words;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	public String toString() {
+		return path;
+	}
+
+	/** Reads the entries of one index in sorted order. The current word is kept as
+	  * UTF-8 bytes and only turned into a String by getWord().
+	  */
+	public static class Cursor {
+		private FrequencyIndex index;
+		private int position;
+		private int remaining;
+		private byte[] key;
+		private int key_length;
+		private int count;
+
+		private Cursor(FrequencyIndex index) {
+			this.index = index;
+			position = HEADER_SIZE;
+			remaining = index.num_entries;
+			key = new byte[64];
+			key_length = 0;
+			count = 0;
+		}
+
+		/** Moves to the entry at a restart point, so the next call to next() reads it. */
+		private void seekRestart(int restart) {
+			position = index.buffer.getInt(index.restarts_offset + 4 * restart);
+			remaining = index.num_entries - restart * index.restart_interval;
+			key_length = 0;
+		}
+
+		/** Moves to the next entry.
+		  * @return false if there are no more entries.
+		  */
+		public boolean next() {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			int shared = readVarint();
+			int suffix = readVarint();
+			if (shared + suffix > key.length) {
+				key = Arrays.copyOf(key, Math.max(shared + suffix, key.length * 2));
+			}
+			for (int i = 0; i < suffix; i++) {
+				key[shared + i] = index.buffer.get(position + i);
+			}
+			position += suffix;
+			key_length = shared + suffix;
+			count = readVarint();
+			return true;
+		}
+
+		private int readVarint() {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = index.buffer.get(position++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		public String getWord() {
+			return new String(key, 0, key_length, StandardCharsets.UTF_8);
+		}
+
+		public int getCount() {
+			return count;
+		}
+	}
+
+	/** Reads several indexes as one, in sorted order, adding the counts of a word that
+	  * is in more than one. Cursors are kept in a priority queue by their current word.
+	  */
+	public static class MergedCursor {
+		private PriorityQueue<Cursor> queue;
+		private long n;
+		private byte[] key;
+		private int key_length;
+		private int count;
+
+		public MergedCursor(FrequencyIndex[] indexes) {
+			queue = new PriorityQueue<Cursor>(Math.max(1, indexes.length), new Comparator<Cursor>() {
+				public int compare(Cursor a, Cursor b) {
+					return Arrays.compareUnsigned(a.key, 0, a.key_length, b.key, 0, b.key_length);
+				}
+			});
+			n = 0;
+			for (int i = 0; i < indexes.length; i++) {
+				n += indexes[i].getTokenCount();
+				Cursor cursor = indexes[i].cursor();
+				if (cursor.next()) {
+					queue.add(cursor);
+				}
+			}
+			key = new byte[64];
+			key_length = 0;
+			count = 0;
+		}
+
+		/** Moves to the next distinct word.
+		  * @return false if there are no more words.
+		  * @throws ArithmeticException if the summed count does not fit in an int.
+		  */
+		public boolean next() {
+			if (queue.isEmpty()) {
+				return false;
+			}
+			Cursor first = queue.poll();
+			if (first.key_length > key.length) {
+				key = Arrays.copyOf(key, Math.max(first.key_length, key.length * 2));
+			}
+			System.arraycopy(first.key, 0, key, 0, first.key_length);
+			key_length = first.key_length;
+			count = first.count;
+			if (first.next()) {
+				queue.add(first);
+			}
+			while (!queue.isEmpty() && Arrays.compareUnsigned(queue.peek().key, 0,
+					queue.peek().key_length, key, 0, key_length) == 0) {
+				Cursor same = queue.poll();
+				count = Math.addExact(count, same.count);
+				if (same.next()) {
+					queue.add(same);
+				}
+			}
+			return true;
+		}
+
+		public String getWord() {
+			return new String(key, 0, key_length, StandardCharsets.UTF_8);
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		/** Gets the total number of words counted into all the merged indexes. */
+		public long getTokenCount() {
+			return n;
+		}
+	}
+
+	/** Writes an index from entries given in sorted order. The header is filled in
+	  * when the writer is closed.
+	  */
+	public static class Writer implements Closeable {
+		private String path;
+		private DataOutputStream output;
+		private long position;
+		private int restart_interval;
+		private byte[] previous;
+		private int previous_length;
+		private int num_entries;
+		private long n;
+		private int[] restarts;
+		private int restart_count;
+
+		public Writer(String path) throws IOException {
+			this(path, DEFAULT_RESTART_INTERVAL);
+		}
+
+		public Writer(String path, int restart_interval) throws IOException {
+			if (restart_interval <= 0) {
+				throw new IllegalArgumentException("restart interval must be positive: " + restart_interval);
+			}
+			this.path = path;
+			this.restart_interval = restart_interval;
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+			output.write(new byte[HEADER_SIZE]);
+			position = HEADER_SIZE;
+			previous = new byte[64];
+			previous_length = 0;
+			num_entries = 0;
+			n = 0;
+			restarts = new int[16];
+			restart_count = 0;
+		}
+
+		/** Sets the number of words counted, stored in the header as n. */
+		public void setTokenCount(long n) {
+			this.n = n;
+		}
+
+		/** Adds an entry. Words must be added in increasing order of their UTF-8 bytes.
+		  * @throws IllegalArgumentException if the word is not after the previous one.
+		  */
+		public void add(String word, int count) throws IOException {
+			byte[] key = word.getBytes(StandardCharsets.UTF_8);
+			add(key, key.length, count);
+		}
+
+		public void add(byte[] key, int length, int count) throws IOException {
+			if (num_entries > 0 && Arrays.compareUnsigned(previous, 0, previous_length, key, 0, length) >= 0) {
+				throw new IllegalArgumentException("Index entries out of order: "
+				+ new String(key, 0, length, StandardCharsets.UTF_8));
+			}
+			if (position > Integer.MAX_VALUE) {
+				throw new IOException("Index too large: " + path);
+			}
+			int shared = 0;
+			if (num_entries % restart_interval == 0) {
+				if (restart_count == restarts.length) {
+					restarts = Arrays.copyOf(restarts, restart_count * 2);
+				}
+				restarts[restart_count++] = (int) position;
+			} else {
+				int limit = Math.min(previous_length, length);
+				while (shared < limit && previous[shared] == key[shared]) {
+					shared++;
+				}
+			}
+			writeVarint(shared);
+			writeVarint(length - shared);
+			output.write(key, shared, length - shared);
+			position += length - shared;
+			writeVarint(count);
+			if (length > previous.length) {
+				previous = Arrays.copyOf(previous, Math.max(length, previous.length * 2));
+			}
+			System.arraycopy(key, 0, previous, 0, length);
+			previous_length = length;
+			num_entries++;
+		}
+
+		private void writeVarint(int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				output.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+				position++;
+			}
+			output.write(value);
+			position++;
+		}
+
+		/** Closes a writer that will not be finished and deletes its file, which has
+		  * no valid header.
+		  */
+		public void abort() {
+			try {
+				output.close();
+			} catch (IOException e) {
+				/** The file is deleted anyway. */
+			}
+			new File(path).delete();
+		}
+
+		/** Writes the restart points and fills in the header. Call it only once every
+		  * entry has been added; a writer that fails before then should be aborted.
+		  */
+		public void close() throws IOException {
+			long restarts_offset = position;
+			for (int i = 0; i < restart_count; i++) {
+				output.writeInt(restarts[i]);
+			}
+			output.close();
+			RandomAccessFile file = new RandomAccessFile(path, "rw");
+			try {
+				file.writeInt(MAGIC);
+				file.writeInt(VERSION);
+				file.writeLong(n);
+				file.writeInt(num_entries);
+				file.writeInt(restart_interval);
+				file.writeLong(restarts_offset);
+				file.writeInt(restart_count);
+			} finally {
+				file.close();
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
 
 /**
   * HashDictionaryImplementation
@@ -9,7 +10,7 @@ import java.util.Iterator;
   * This program contains the constructor and methods of a Hash Dictionary Implementation.
   */
   
-public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
+public class HashDictionaryImplementation<K, V> implements Dictionary<K, V>, InstrumentedTable {
 	private Object[] hashTable;
 	private int num_entries;
 	private int table_size;
@@ -21,17 +22,85 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
     25165843, 50331653, 100663319, 201326611, 402653189, 805306457,
     1610612741 };
 	private static final double MAX_LOAD_FACTOR = 0.5;
+	/** Number of old buckets moved by each operation during an incremental rehash. */
+	private static final int MIGRATE_STEP = 4;
+	
+	/** When incremental is true, a rehash only allocates the new table and every
+	  * following operation moves a few buckets of oldTable into it, so no single
+	  * operation pays for moving the whole table.
+	  */
+	private boolean incremental;
+	private Object[] oldTable;
+	private int old_table_size;
+	private int migrate_index;
+	private int resize_count;
+	private long resize_nanos;
+	
+	/** The hash function, and whether table sizes are powers of two so that an index
+	  * is found by masking the hash instead of taking it modulo a prime.
+	  */
+	private HashStrategy strategy;
+	private boolean power_of_two;
+	private static final int POWER_OF_TWO_SIZE = 128;
+	private static final int MAX_POWER_OF_TWO_SIZE = 1 << 30;
 	
 	public HashDictionaryImplementation() {
 		this(DEFAULT_SIZE);
 	}
 	
 	public HashDictionaryImplementation(int prime_size) {
+		this(prime_size, false);
+	}
+	
+	public HashDictionaryImplementation(int prime_size, boolean incremental) {
+		this(prime_size, incremental, new ObjectHashStrategy(), false);
+	}
+	
+	/** Creates a dictionary with the given hash function. With power_of_two set, the
+	  * table sizes are powers of two and indexes are taken from the low bits of the
+	  * hash, which is faster than a modulo but needs a strategy that mixes its bits
+	  * well, such as SeededHashStrategy.
+	  */
+	public HashDictionaryImplementation(HashStrategy strategy, boolean power_of_two) {
+		this(power_of_two ? POWER_OF_TWO_SIZE : DEFAULT_SIZE, false, strategy, power_of_two);
+	}
+	
+	public HashDictionaryImplementation(int size, boolean incremental, HashStrategy strategy,
+										boolean power_of_two) {
+		if (power_of_two) {
+			int table = 1;
+			while (table < size) {
+				table *= 2;
+			}
+			size = table;
+		}
 		num_entries = 0;
-		table_size = prime_size;
+		table_size = size;
 		@SuppressWarnings("unchecked")
-  		Object[] tmp = (Object[]) new Object[prime_size];
+  		Object[] tmp = (Object[]) new Object[size];
 		hashTable = tmp;
+		this.incremental = incremental;
+		oldTable = null;
+		old_table_size = 0;
+		migrate_index = 0;
+		resize_count = 0;
+		resize_nanos = 0;
+		this.strategy = strategy;
+		this.power_of_two = power_of_two;
+	}
+	
+	/** Creates a dictionary whose table is large enough to hold the expected number
+	  * of entries without a rehash.
+	  */
+	public static <K, V> HashDictionaryImplementation<K, V> withExpectedSize(int expected_entries) {
+		int size = PRIMES[PRIMES.length - 1];
+		for (int i = 0; i < PRIMES.length; i++) {
+			if ((expected_entries + 1) / (double) PRIMES[i] <= MAX_LOAD_FACTOR) {
+				size = PRIMES[i];
+				break;
+			}
+		}
+		return new HashDictionaryImplementation<K, V>(size);
 	}
 	
 	/** Node class that keeps track of both the key and the value of a data entry
@@ -83,48 +152,6 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
 		}
 	}
 	
-	/** Set class that uses the Java HashSet Class. Some methods are not contained
-	  * in HashSet so exceptions are thrown for them in the JavaSetWrapper class.
-	  */
-	private class JavaSetWrapper<T> implements Set<T> {
-		private HashSet<T> set;
-		
-		public JavaSetWrapper() {
-			set = new HashSet<T>();
-		}
-		
-		public void add(T item) {
-			set.add(item);
-		}
-		public boolean remove(T item) {
-			return set.remove(item);
-		}
-		public boolean contains(T item) {
-			return set.contains(item);
-		}
-		public int size() {
-			return set.size();
-		}
-		public boolean isEmpty() {
-			return set.isEmpty();
-		}
-		public void clear() {
-			set.clear();
-		}
-		public Set<T> union(Set<T> otherSet) {
-			throw new UnsupportedOperationException();
-		}
-		public Set<T> intersect(Set<T> otherSet) {
-			throw new UnsupportedOperationException();
-		}
-		public Iterator<T> iterator() {
-			return set.iterator();
-		}
-		public Object[] toArray() {
-			throw new UnsupportedOperationException();
-		}
-	}
-	
 	/** Class that stores the key and value of a specific data entry. */
 	private class KVPair<K, V> implements DictPair<K, V> {
 		private K key;
@@ -150,38 +177,120 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
 	
 	/** A method that takes a key and returns the hashCode() index for that key. */
 	private int getHashCode(K key) {
-		int hash_code = Math.abs(key.hashCode() % table_size);
-		return hash_code;
+		return getHashCode(key, table_size);
+	}
+	
+	/** Returns the index of a key in a table with the given number of buckets. floorMod
+	  * keeps the index in range for every hash, including Integer.MIN_VALUE.
+	  */
+	private int getHashCode(K key, int size) {
+		int hash = strategy.hash(key);
+		if (power_of_two) {
+			return hash & (size - 1);
+		}
+		return Math.floorMod(hash, size);
+	}
+	
+	/** Returns the next prime in PRIMES, each of which is roughly double the one before
+	  * (or double the size in power-of-two mode), or the current size if the table
+	  * cannot grow any larger.
+	  */
+	private int nextTableSize() {
+		if (power_of_two) {
+			if (table_size >= MAX_POWER_OF_TWO_SIZE) {
+				return table_size;
+			}
+			return table_size * 2;
+		}
+		for (int i = 0; i < PRIMES.length; i++) {
+			if (PRIMES[i] > table_size) {
+				return PRIMES[i];
+			}
+		}
+		return table_size;
 	}
 	
 	/** Approximately doubles the size of the hashTable to the nearest prime number
-	  * when the Low Load Factor gets larger than a specified value (0.5 in this case).
+	  * when the load factor gets larger than a specified value (0.5 in this case).
+	  * In incremental mode the entries are moved later by migrateBuckets().
 	  */
 	private void rehash() {
-		Object[] oldTable = hashTable;
-		int old_size = num_entries;
-		int new_size = old_size;
-		int index = 0;
-		while (new_size <= (2 * old_size)) {
-			if (new_size < PRIMES[index]) {
-				new_size = PRIMES[index];
-			}
-			index++;
+		int new_size = nextTableSize();
+		if (new_size == table_size) {
+			return;
 		}
+		finishMigration();
+		long started = System.nanoTime();
 		
+		Object[] table = hashTable;
+		int size = table_size;
 		@SuppressWarnings("unchecked")
   		Object[] tmp = (Object[]) new Object[new_size];
 		hashTable = tmp;
-		num_entries = 0;
 		table_size = new_size;
+		resize_count++;
 		
-		for (int i = 0; i < oldTable.length; i++) {
-			if (oldTable[i] != null) {
-				@SuppressWarnings("unchecked")
-       			Node current_node = (Node) oldTable[i];
-       			add(current_node.getKey(), current_node.getValue());
-       		}
-       	}
+		oldTable = table;
+		old_table_size = size;
+		migrate_index = 0;
+		if (!incremental) {
+			finishMigration();
+		}
+		resize_nanos += System.nanoTime() - started;
+	}
+	
+	/** Moves every node of one old bucket, chained nodes included, to the front of
+	  * its bucket in the new table. Nodes are relinked rather than copied.
+	  */
+	private void migrateBucket(int old_index) {
+		@SuppressWarnings("unchecked")
+		Node current_node = (Node) oldTable[old_index];
+		oldTable[old_index] = null;
+		while (current_node != null) {
+			Node next_node = current_node.getNext();
+			int index = getHashCode(current_node.getKey());
+			@SuppressWarnings("unchecked")
+			Node head_node = (Node) hashTable[index];
+			current_node.setNext(head_node);
+			hashTable[index] = current_node;
+			current_node = next_node;
+		}
+	}
+	
+	/** Moves up to count old buckets into the new table, in order. */
+	private void migrateBuckets(int count) {
+		if (oldTable == null) {
+			return;
+		}
+		int last = Math.min(old_table_size, migrate_index + count);
+		while (migrate_index < last) {
+			migrateBucket(migrate_index);
+			migrate_index++;
+		}
+		if (migrate_index == old_table_size) {
+			oldTable = null;
+		}
+	}
+	
+	/** Moves the old bucket that may hold key, so that the key is only ever looked
+	  * for in the new table, then moves the next few buckets.
+	  */
+	private void migrateFor(K key) {
+		if (oldTable == null) {
+			return;
+		}
+		int old_index = getHashCode(key, old_table_size);
+		if (old_index >= migrate_index) {
+			migrateBucket(old_index);
+		}
+		migrateBuckets(MIGRATE_STEP);
+	}
+	
+	/** Moves every remaining old bucket into the new table. */
+	private void finishMigration() {
+		if (oldTable != null) {
+			migrateBuckets(old_table_size);
+		}
 	}
 	
 	/** Checks the size of the hashTable against the number of entries every time a
@@ -189,7 +298,7 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
 	  * appropriately larger size than the number of entries in the table.
 	  */
 	private void ensureLowLoadFactor() {
-		int load_factor = num_entries/table_size;
+		double load_factor = (num_entries + 1) / (double) table_size;
 		if (load_factor > MAX_LOAD_FACTOR) {
 			rehash();
 		}
@@ -203,6 +312,7 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
      */
     public V add(K key, V value) {
     	ensureLowLoadFactor();
+    	migrateFor(key);
     	V return_value = null;
     	boolean successful = false;
     	int index = getHashCode(key);
@@ -244,11 +354,12 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
 				} else {
 					/** Else the current node has a node connected to it.
 					  * If the node connected to the current node has the
-					  * same value as the value given by the user, then do nothing
-					  * and set the return value to the value given by the user.
+					  * same key as the key given by the user, then replace its
+					  * value and set the return value to the old value.
 					  */
-					if (current_node.getNext().getValue().equals(value)) {
-						return_value = new_node.getValue();
+					if (key.equals(current_node.getNext().getKey())) {
+						return_value = current_node.getNext().getValue();
+						current_node.getNext().setValue(value);
 						successful = true;
 					/** Else we have to check the next node. Set the next node to the
 					  * current node and start over.
@@ -268,6 +379,7 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
      *         or null if the key was not in the dictionary.
      */
     public V remove(K key) {
+    	migrateFor(key);
     	V return_value = null;
     	int index = getHashCode(key);
     	if (hashTable[index] != null) {
@@ -280,26 +392,22 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
     			  * move the next node to the current_node position if it exists.
     			  */
     			return_value = current_node.getValue();
-    			if (current_node.getNext() == null) {
-    				hashTable[index] = null;
-    			} else {
-    				current_node = current_node.getNext();
-    			}
+    			hashTable[index] = current_node.getNext();
 				num_entries--;
 			} else {
 				/** If the key of the intended removal node is not the same as
 				  * as the key of the node at the proper index then go to the next
 				  * node and check the key of that node.
 				  */
-				while (current_node.hasNext()) {
+				boolean removed = false;
+				while (!removed && current_node.hasNext()) {
 					Node prev_node = current_node;
 					current_node = current_node.getNext();
 					if (key.equals(current_node.getKey())) {
 						return_value = current_node.getValue();
-						Node temp_node = current_node.getNext();
-						current_node = null;
-						prev_node.setNext(temp_node);
+						prev_node.setNext(current_node.getNext());
 						num_entries--;
+						removed = true;
 					}
 				}
 			}
@@ -312,6 +420,7 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
      *         or null if no such object exists.
      */
     public V getValue(K key) {
+    	migrateFor(key);
     	V return_value = null;
     	int index = getHashCode(key);
     	if (hashTable[index] != null) {
@@ -335,6 +444,7 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
      * @return true If key is associated with an entry in the dictionary.
      */
     public boolean contains(K key) {
+    	migrateFor(key);
     	boolean contain_value = false; 
     	int index = getHashCode(key);
     	if (hashTable[index] != null) {
@@ -363,12 +473,16 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
     
     /** Returns a Set that contains all the keys stored in the dictionary. */
     public Set<K> getKeySet() {
+    	finishMigration();
     	Set<K> keys = new JavaSetWrapper<K>();
     	for (int index = 0; index < table_size; index++) {
     		if (hashTable[index] != null) {
     			@SuppressWarnings("unchecked")
     			Node current_node = (Node) hashTable[index];
-    			keys.add(current_node.getKey());
+    			while (current_node != null) {
+    				keys.add(current_node.getKey());
+    				current_node = current_node.getNext();
+    			}
     		}
     	}
     	return keys;
@@ -376,18 +490,105 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
     
     /** Returns a Set of the key-value KVPair stored in the dictionary. */
     public Set<DictPair<K, V>> getEntrySet() {
+    	finishMigration();
     	Set<DictPair<K, V>> pair_set = new JavaSetWrapper<DictPair<K, V>>();
     	for (int index = 0; index < table_size; index++) {
     		if (hashTable[index] != null) {
     			@SuppressWarnings("unchecked")
     			Node current_node = (Node) hashTable[index];
-    			DictPair<K, V> new_pair = new KVPair<K, V>(current_node.getKey(), current_node.getValue());
-    			pair_set.add(new_pair);
+    			while (current_node != null) {
+    				DictPair<K, V> new_pair = new KVPair<K, V>(current_node.getKey(), current_node.getValue());
+    				pair_set.add(new_pair);
+    				current_node = current_node.getNext();
+    			}
     		}
     	}
     	return pair_set;	
     }
     
+    /** Passes every key and its value to action, walking each bucket's whole
+      * chain, without creating any objects.
+      */
+    public void forEachEntry(BiConsumer<? super K, ? super V> action) {
+    	finishMigration();
+    	for (int index = 0; index < table_size; index++) {
+    		@SuppressWarnings("unchecked")
+    		Node current_node = (Node) hashTable[index];
+    		while (current_node != null) {
+    			action.accept(current_node.getKey(), current_node.getValue());
+    			current_node = current_node.getNext();
+    		}
+    	}
+    }
+    
+    /** Adds every entry of another dictionary to this dictionary. If a key is
+     * in both dictionaries, its value becomes combiner.apply(this value,
+     * other value).
+     */
+    public void mergeAll(Dictionary<K, V> other, final BinaryOperator<V> combiner) {
+    	other.forEachEntry(new BiConsumer<K, V>() {
+    		public void accept(K key, V value) {
+    			V existing_value = getValue(key);
+    			if (existing_value == null) {
+    				add(key, value);
+    			} else {
+    				add(key, combiner.apply(existing_value, value));
+    			}
+    		}
+    	});
+    }
+    
+    /** Returns how evenly the keys are spread over the table: the longest chain, the
+      * average probe length and a histogram of chain lengths.
+      */
+    public HashStatistics getStatistics() {
+    	finishMigration();
+    	HashStatistics statistics = new HashStatistics(table_size);
+    	for (int index = 0; index < table_size; index++) {
+    		int length = 0;
+    		@SuppressWarnings("unchecked")
+    		Node current_node = (Node) hashTable[index];
+    		while (current_node != null) {
+    			length++;
+    			current_node = current_node.getNext();
+    		}
+    		statistics.addChain(length);
+    	}
+    	return statistics;
+    }
+    
+    /** Gets the number of times the table has grown since it was created. */
+    public int getResizeCount() {
+    	return resize_count;
+    }
+    
+    /** Gets the time spent growing the table, in nanoseconds. In incremental mode
+      * this is only the time to allocate each new table and finish the previous
+      * migration, since the buckets are moved by later operations.
+      */
+    public long getResizeNanos() {
+    	return resize_nanos;
+    }
+    
+    /** Gets the number of entries found on each probe: the i-th node of a chain
+      * is found on the i-th probe.
+      */
+    public long[] getProbeHistogram() {
+    	finishMigration();
+    	long[] histogram = new long[HashStatistics.HISTOGRAM_SIZE];
+    	for (int index = 0; index < table_size; index++) {
+    		int position = 0;
+    		@SuppressWarnings("unchecked")
+    		Node current_node = (Node) hashTable[index];
+    		while (current_node != null) {
+    			position++;
+    			histogram[Math.min(position, histogram.length - 1)]++;
+    			current_node = current_node.getNext();
+    		}
+    	}
+    	return histogram;
+    }
+    
     /** Gets the size of this dictionary. */
     public int size() {
     	return num_entries;
@@ -404,6 +605,7 @@ public class HashDictionaryImplementation<K, V> implements Dictionary<K, V> {
     
     /** Removes all entries from this dictionary. */
     public void clear() {
+    	oldTable = null;
     	num_entries = 0;
     	for (int i = 0; i < table_size; i++) {
     		hashTable[i] = null;
@@ -0,0 +1,113 @@
+/**
+  * HashDictionaryStressBenchmark
+  * Fills a HashDictionaryImplementation that starts at the smallest table size, so it
+  * is rehashed many times, then updates and removes entries and checks that the size
+  * and every count are still correct. Runs once with full rehashing and once with
+  * incremental rehashing and prints the total time and the slowest single add, which
+  * shows the pause a full rehash causes. Finally prints the chain statistics of each
+  * hash strategy for hex ID keys, a skewed vocabulary common in logs. Use a fixed
+  * heap (-Xms equal to -Xmx) so that heap resizing does not hide the rehash pause.
+  *     java -Xms3g -Xmx3g HashDictionaryStressBenchmark [entries]
+  */
+
+public class HashDictionaryStressBenchmark {
+	private static final int DEFAULT_ENTRIES = 2000000;
+	private static final int SMALLEST_PRIME = 13;
+
+	/** Runs the stress test on one dictionary and prints the result.
+	  * @return true if the size and all counts were preserved.
+	  */
+	private static boolean run(String name, boolean incremental, int entries) {
+		Dictionary<String, Integer> counts =
+		new HashDictionaryImplementation<String, Integer>(SMALLEST_PRIME, incremental);
+		boolean correct = true;
+		long slowest_add = 0;
+		long start = System.nanoTime();
+
+		/** Adds every key once, checking the size as the table grows. */
+		for (int i = 0; i < entries; i++) {
+			long before = System.nanoTime();
+			counts.add("key" + i, 1);
+			long elapsed = System.nanoTime() - before;
+			if (elapsed > slowest_add) {
+				slowest_add = elapsed;
+			}
+			if (counts.size() != i + 1) {
+				correct = false;
+			}
+		}
+
+		/** Counts every third key again and removes every fifth key. */
+		for (int i = 0; i < entries; i += 3) {
+			String key = "key" + i;
+			counts.add(key, counts.getValue(key) + 1);
+		}
+		int removed = 0;
+		for (int i = 0; i < entries; i += 5) {
+			if (counts.remove("key" + i) == null) {
+				correct = false;
+			}
+			removed++;
+		}
+		long total = System.nanoTime() - start;
+
+		/** Checks the final size and every count. */
+		if (counts.size() != entries - removed) {
+			correct = false;
+		}
+		for (int i = 0; i < entries; i++) {
+			Integer value = counts.getValue("key" + i);
+			if (i % 5 == 0) {
+				if (value != null) {
+					correct = false;
+				}
+			} else {
+				int expected = 1;
+				if (i % 3 == 0) {
+					expected = 2;
+				}
+				if (value == null || value != expected) {
+					correct = false;
+				}
+			}
+		}
+		if (counts.getEntrySet().size() != entries - removed) {
+			correct = false;
+		}
+
+		String result = "sizes and counts preserved";
+		if (!correct) {
+			result = "SIZES OR COUNTS NOT PRESERVED";
+		}
+		System.out.println(name + ": " + entries + " entries, " + result + ", total "
+		+ (total / 1000000) + " ms, slowest add " + (slowest_add / 1000) + " us");
+		return correct;
+	}
+
+	/** Fills a dictionary with hex ID keys and prints its chain statistics. */
+	private static void printStatistics(String name, HashStrategy strategy, boolean power_of_two,
+										int entries) {
+		HashDictionaryImplementation<String, Integer> ids =
+		new HashDictionaryImplementation<String, Integer>(strategy, power_of_two);
+		for (int i = 0; i < entries; i++) {
+			ids.add(String.format("%08x", (long) i * 4096), i);
+		}
+		System.out.println(name + ":");
+		System.out.println(ids.getStatistics());
+	}
+
+	public static void main(String[] args) {
+		int entries = DEFAULT_ENTRIES;
+		if (args.length > 0) {
+			entries = Integer.parseInt(args[0]);
+		}
+		boolean correct = run("full rehash", false, entries);
+		correct = run("incremental rehash", true, entries) && correct;
+		printStatistics("hashCode, prime modulo", new ObjectHashStrategy(), false, entries);
+		printStatistics("hashCode, power-of-two mask", new ObjectHashStrategy(), true, entries);
+		printStatistics("seeded, power-of-two mask", new SeededHashStrategy(0x5bd1e995), true, entries);
+		if (!correct) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/**
+  * HashStatistics
+  * A snapshot of how evenly a HashDictionaryImplementation spreads its keys: the table
+  * size, the number of entries and occupied buckets, the longest chain, the average
+  * number of nodes a successful lookup inspects, and a histogram of chain lengths.
+  */
+
+public class HashStatistics {
+	/** Chains of this length or longer share the histogram's last bucket. */
+	public static final int HISTOGRAM_SIZE = 16;
+
+	private int table_size;
+	private int num_entries;
+	private int occupied_buckets;
+	private int max_chain_length;
+	private long total_probes;
+	private long[] chain_histogram;
+
+	public HashStatistics(int table_size) {
+		this.table_size = table_size;
+		num_entries = 0;
+		occupied_buckets = 0;
+		max_chain_length = 0;
+		total_probes = 0;
+		chain_histogram = new long[HISTOGRAM_SIZE];
+	}
+
+	/** Records one bucket holding a chain of the given length. */
+	public void addChain(int length) {
+		chain_histogram[Math.min(length, HISTOGRAM_SIZE - 1)]++;
+		if (length > 0) {
+			occupied_buckets++;
+			num_entries += length;
+			/** Finding the i-th node of a chain inspects i nodes. */
+			total_probes += (long) length * (length + 1) / 2;
+		}
+		if (length > max_chain_length) {
+			max_chain_length = length;
+		}
+	}
+
+	public int getTableSize() {
+		return table_size;
+	}
+
+	public int getEntryCount() {
+		return num_entries;
+	}
+
+	public int getOccupiedBuckets() {
+		return occupied_buckets;
+	}
+
+	public int getMaxChainLength() {
+		return max_chain_length;
+	}
+
+	/** Gets the average number of nodes inspected to find a key that is present. */
+	public double getAverageProbeLength() {
+		if (num_entries == 0) {
+			return 0;
+		}
+		return total_probes / (double) num_entries;
+	}
+
+	/** Gets the number of buckets holding chains of each length. Index 0 counts the
+	  * empty buckets and the last index counts every chain of HISTOGRAM_SIZE - 1 or more.
+	  */
+	public long[] getChainHistogram() {
+		return chain_histogram.clone();
+	}
+
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append("table size: ").append(table_size).append('\n');
+		text.append("entries: ").append(num_entries).append('\n');
+		text.append("occupied buckets: ").append(occupied_buckets).append('\n');
+		text.append("max chain length: ").append(max_chain_length).append('\n');
+		text.append("average probe length: ").append(String.format("%.3f", getAverageProbeLength())).append('\n');
+		text.append("chain lengths:");
+		for (int i = 0; i < HISTOGRAM_SIZE; i++) {
+			if (chain_histogram[i] > 0) {
+				text.append(' ').append(i);
+				if (i == HISTOGRAM_SIZE - 1) {
+					text.append('+');
+				}
+				text.append('=').append(chain_histogram[i]);
+			}
+		}
+		return text.toString();
+	}
+}
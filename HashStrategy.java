@@ -0,0 +1,7 @@
+/**
+ * A hash function used by HashDictionaryImplementation to place its keys.
+ */
+public interface HashStrategy {
+    /** Returns the hash code of a key. Equal keys must have equal hash codes. */
+    public int hash(Object key);
+}
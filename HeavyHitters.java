@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * HeavyHitters
+  * Approximate word counting in a fixed memory budget, for inputs with too many
+  * distinct words to count exactly. A SpaceSaving summary finds the most frequent
+  * words and a CountMinSketch answers the count of any word. Both only ever
+  * overestimate, so a ranked word is reported with the smaller of its two counts.
+  *
+  * After N words, a reported count exceeds the true count by at most
+  * getMaxError(): the smallest Space-Saving counter (at most N / counters), and with
+  * probability at least 1 - e^-depth also at most epsilon * N from the sketch.
+  */
+
+public class HeavyHitters {
+	/** Rough heap cost of one Space-Saving counter: the heap arrays, its slot in the
+	  * position table and a short word String.
+	  */
+	public static final int BYTES_PER_COUNTER = 128;
+	private static final int SKETCH_DEPTH = 5;
+
+	private SpaceSaving summary;
+	private CountMinSketch sketch;
+
+	public HeavyHitters(int counters, CountMinSketch sketch) {
+		summary = new SpaceSaving(counters);
+		this.sketch = sketch;
+	}
+
+	/** Splits a memory budget evenly between the summary and the sketch. */
+	public static HeavyHitters withMemory(long bytes) {
+		int counters = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, bytes / 2 / BYTES_PER_COUNTER));
+		return new HeavyHitters(counters, CountMinSketch.withMemory(bytes / 2, SKETCH_DEPTH));
+	}
+
+	/** Counts one occurrence of a word. */
+	public void increment(String word) {
+		sketch.add(word, 1);
+		summary.increment(word);
+	}
+
+	/** Gets the estimated count of any word. */
+	public int estimate(String word) {
+		int tracked = summary.getCount(word);
+		int sketched = sketch.estimate(word);
+		if (tracked == 0) {
+			return Math.min(sketched, summary.getMinCount());
+		}
+		return Math.min(tracked, sketched);
+	}
+
+	/** Returns the k most frequent words with their estimated counts, ranked like
+	  * WordFreqs ranks exact counts.
+	  */
+	public ArrayList<DictPair<String, Integer>> top(int k) {
+		final TopKSelector selector = new TopKSelector(k);
+		summary.forEachCount(new ObjIntConsumer<String>() {
+			public void accept(String word, int count) {
+				selector.offer(word, Math.min(count, sketch.estimate(word)));
+			}
+		});
+		return selector.result();
+	}
+
+	/** Gets the largest amount a reported count can exceed the true count by, holding
+	  * with probability at least 1 - getSketch().getDelta().
+	  */
+	public long getMaxError() {
+		return Math.min(summary.getMinCount(), (long) Math.ceil(sketch.getEpsilon() * sketch.getTotal()));
+	}
+
+	/** Gets the number of words counted. */
+	public long getTotal() {
+		return summary.getTotal();
+	}
+
+	public SpaceSaving getSummary() {
+		return summary;
+	}
+
+	public CountMinSketch getSketch() {
+		return sketch;
+	}
+}
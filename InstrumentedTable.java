@@ -0,0 +1,20 @@
+/**
+ * A hash table that keeps track of its own growth and can report how many probes
+ * its entries take to find, for Metrics.
+ */
+public interface InstrumentedTable {
+    /** Gets the number of times the table has grown since it was created. */
+    public int getResizeCount();
+    
+    /** Gets the total time spent growing the table, in nanoseconds. */
+    public long getResizeNanos();
+    
+    /** Gets the number of entries that take each number of probes to find. Index i
+     * counts the entries found on the i-th probe; the last index also counts every
+     * entry that takes longer.
+     */
+    public long[] getProbeHistogram();
+    
+    /** Gets the number of entries in the table. */
+    public int size();
+}
@@ -0,0 +1,68 @@
+import java.util.HashSet;
+import java.util.Iterator;
+
+/** Set class that uses the Java HashSet Class. Union and intersect walk the
+  * other set and build a new JavaSetWrapper; intersect walks the smaller set.
+  */
+public class JavaSetWrapper<T> implements Set<T> {
+	private HashSet<T> set;
+	
+	public JavaSetWrapper() {
+		set = new HashSet<T>();
+	}
+	
+	public void add(T item) {
+		set.add(item);
+	}
+	public boolean remove(T item) {
+		return set.remove(item);
+	}
+	public boolean contains(T item) {
+		return set.contains(item);
+	}
+	public int size() {
+		return set.size();
+	}
+	public boolean isEmpty() {
+		return set.isEmpty();
+	}
+	public void clear() {
+		set.clear();
+	}
+	public Set<T> union(Set<T> otherSet) {
+		JavaSetWrapper<T> result = new JavaSetWrapper<T>();
+		result.set.addAll(set);
+		Iterator<T> iterator = otherSet.iterator();
+		while (iterator.hasNext()) {
+			result.set.add(iterator.next());
+		}
+		return result;
+	}
+	public Set<T> intersect(Set<T> otherSet) {
+		JavaSetWrapper<T> result = new JavaSetWrapper<T>();
+		if (otherSet.size() < set.size()) {
+			Iterator<T> iterator = otherSet.iterator();
+			while (iterator.hasNext()) {
+				T item = iterator.next();
+				if (set.contains(item)) {
+					result.set.add(item);
+				}
+			}
+		} else {
+			Iterator<T> iterator = set.iterator();
+			while (iterator.hasNext()) {
+				T item = iterator.next();
+				if (otherSet.contains(item)) {
+					result.set.add(item);
+				}
+			}
+		}
+		return result;
+	}
+	public Iterator<T> iterator() {
+		return set.iterator();
+	}
+	public Object[] toArray() {
+		return set.toArray();
+	}
+}
@@ -0,0 +1,291 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+  * MappedWordCounter
+  * Counts the words of a file by mapping it into memory with FileChannel.map, one
+  * window at a time, and tokenizing the raw bytes with the same rules as Tokenizer:
+  * ASCII letters are lowercased, whitespace, apostrophes and hyphens end a word,
+  * and every other byte is dropped. All whitespace outside ASCII is encoded in three
+  * UTF-8 bytes (U+2003 EM SPACE and U+3000 IDEOGRAPHIC SPACE, for example), so
+  * three-byte characters are decoded as they are read and end a word if they are
+  * whitespace. Each word is hashed from its bytes as it is read and looked up in a
+  * SymbolTable, so a String is only created the first time a distinct word is seen,
+  * and counts are kept in an array indexed by the word's ID.
+  */
+
+public class MappedWordCounter {
+	/** Size of each mapped window of the file. */
+	private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+	/** ASCII bytes that end a word: whitespace, apostrophe and hyphen. */
+	private static final boolean[] SEPARATOR = new boolean[128];
+	static {
+		for (int b = 0; b < 128; b++) {
+			SEPARATOR[b] = Character.isWhitespace((char) b);
+		}
+		SEPARATOR['\''] = true;
+		SEPARATOR['-'] = true;
+	}
+
+	private SymbolTable symbols;
+	/** Count of every word, indexed by its ID in symbols. */
+	private int[] counts;
+
+	/** The word currently being read. */
+	private byte[] word;
+	private int word_length;
+	private int word_hash;
+
+	private long token_count;
+
+	public MappedWordCounter() {
+		this(0);
+	}
+
+	/** Creates a counter whose table can hold the expected number of distinct words
+	  * without growing.
+	  */
+	public MappedWordCounter(int expected_words) {
+		symbols = new SymbolTable(expected_words);
+		counts = new int[Math.max(16, expected_words)];
+		word = new byte[64];
+		word_length = 0;
+		word_hash = 0;
+		token_count = 0;
+	}
+
+	/** Returns true if b is an ASCII byte that ends a word. */
+	public static boolean isSeparator(byte b) {
+		return b >= 0 && SEPARATOR[b];
+	}
+
+	private static boolean isContinuation(byte b) {
+		return (b & 0xC0) == 0x80;
+	}
+
+	/** Returns true if the character that ends just before position ends a word. */
+	private static boolean followsSeparator(FileChannel channel, long position) throws IOException {
+		long from = Math.max(0, position - 3);
+		MappedByteBuffer before = channel.map(FileChannel.MapMode.READ_ONLY, from, position - from);
+		int last = (int) (position - from) - 1;
+		byte b = before.get(last);
+		if (b >= 0) {
+			return SEPARATOR[b];
+		}
+		if (last < 2 || !isContinuation(b) || !isContinuation(before.get(last - 1))
+		|| (before.get(last - 2) & 0xF0) != 0xE0) {
+			return false;
+		}
+		int code_point = (before.get(last - 2) & 0x0F) << 12 | (before.get(last - 1) & 0x3F) << 6 | (b & 0x3F);
+		return Character.isWhitespace(code_point);
+	}
+
+	/** Counts every word of the file. */
+	public long countFile(FileChannel channel) throws IOException {
+		return count(channel, 0, channel.size());
+	}
+
+	/** Counts the words that begin in the byte range [start, end) of the file. A word
+	  * that begins in the range is read to its end even if that is past end, and a
+	  * word that is already in progress at start is left to the range before it, so
+	  * splitting a file into adjacent ranges counts every word exactly once. A start
+	  * inside a multi-byte character moves to the end of it, since the range before
+	  * always reads that character to its end.
+	  * @return The number of words counted.
+	  */
+	public long count(FileChannel channel, long start, long end) throws IOException {
+		long file_size = channel.size();
+		long found = 0;
+		boolean skipping = false;
+		boolean in_word = false;
+		/** The bits of the three-byte character being decoded, and how many of its
+		  * continuation bytes are still to come.
+		  */
+		int wide = 0;
+		int wide_left = 0;
+		word_length = 0;
+		word_hash = 0;
+
+		if (start > 0 && start < file_size) {
+			MappedByteBuffer after = channel.map(FileChannel.MapMode.READ_ONLY, start,
+			Math.min(3, file_size - start));
+			int moved = 0;
+			while (moved < after.limit() && isContinuation(after.get(moved))) {
+				moved++;
+			}
+			start += moved;
+			skipping = !followsSeparator(channel, start);
+		}
+
+		long position = start;
+		while (position < file_size) {
+			long window_size = Math.min(WINDOW_SIZE, file_size - position);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, window_size);
+			int limit = (int) window_size;
+			int i = 0;
+			while (i < limit) {
+				if (!in_word && !skipping && position + i >= end) {
+					break;
+				}
+				byte b = window.get(i);
+				boolean separator = false;
+				if (b >= 0) {
+					separator = SEPARATOR[b];
+					wide_left = 0;
+				} else if ((b & 0xF0) == 0xE0) {
+					wide = b & 0x0F;
+					wide_left = 2;
+				} else if (isContinuation(b) && wide_left > 0) {
+					wide = wide << 6 | (b & 0x3F);
+					wide_left--;
+					separator = wide_left == 0 && Character.isWhitespace(wide);
+				} else {
+					wide_left = 0;
+				}
+				if (separator) {
+					if (in_word) {
+						if (word_length > 0) {
+							addWord();
+							found++;
+						}
+						in_word = false;
+					}
+					skipping = false;
+				} else if (!skipping) {
+					in_word = true;
+					if (b >= 'A' && b <= 'Z') {
+						appendLetter((byte) (b + ('a' - 'A')));
+					} else if (b >= 'a' && b <= 'z') {
+						appendLetter(b);
+					}
+				}
+				i++;
+			}
+			position += i;
+			if (i < limit) {
+				break;
+			}
+		}
+		if (in_word && word_length > 0) {
+			addWord();
+			found++;
+		}
+		token_count += found;
+		return found;
+	}
+
+	private void appendLetter(byte b) {
+		if (word_length == word.length) {
+			byte[] bigger = new byte[word.length * 2];
+			System.arraycopy(word, 0, bigger, 0, word_length);
+			word = bigger;
+		}
+		word[word_length++] = b;
+		/** Same polynomial as String.hashCode, so the hash matches the final String. */
+		word_hash = 31 * word_hash + b;
+	}
+
+	/** Adds one occurrence of the current word to the table. */
+	private void addWord() {
+		int id = symbols.intern(word, 0, word_length, word_hash);
+		if (id == counts.length) {
+			counts = Arrays.copyOf(counts, counts.length * 2);
+		}
+		counts[id]++;
+		word_length = 0;
+		word_hash = 0;
+	}
+
+	/** Returns a dictionary of every distinct word counted so far and its count. */
+	public CounterDictionary toDictionary() {
+		CounterDictionary words = OpenHashCounterDictionary.withExpectedSize(symbols.size());
+		for (int id = 0; id < symbols.size(); id++) {
+			words.addTo(symbols.getWord(id), counts[id]);
+		}
+		return words;
+	}
+
+	/** Gets the symbol table of the words counted so far. */
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	/** Gets the number of distinct words counted so far. */
+	public int getDistinctCount() {
+		return symbols.size();
+	}
+
+	/** Gets the total number of words counted so far. */
+	public long getTokenCount() {
+		return token_count;
+	}
+
+	/** Checks that random text with whitespace, letters and other characters from
+	  * all over Unicode is counted as Tokenizer counts it, in one range and split in
+	  * two at every byte, and by ParallelWordCounter.
+	  */
+	public static void main(String[] args) throws IOException {
+		String[] pieces = {"a", "Bc", "z", " ", "\n", "-", "'", "1", "\u00e9", "\u00a0", "\u1680",
+		"\u2003", "\u2007", "\u2028", "\u205f", "\u202f", "\u3000", "\u4e2d", "\ud83d\ude00"};
+		Random random = new Random(11);
+		File file = File.createTempFile("mapped", ".txt");
+		file.deleteOnExit();
+		int bad = 0;
+		for (int trial = 0; trial < 300; trial++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(40);
+			for (int i = 0; i < length; i++) {
+				text.append(pieces[random.nextInt(pieces.length)]);
+			}
+			Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+			SymbolCounter expected = new SymbolCounter();
+			long n = new Tokenizer().tokenize(new StringReader(text.toString()), expected);
+			FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+			try {
+				for (long cut = 0; cut <= channel.size(); cut++) {
+					MappedWordCounter counter = new MappedWordCounter();
+					counter.count(channel, 0, cut);
+					counter.count(channel, cut, channel.size());
+					if (!sameCounts(expected, n, counter.getTokenCount(), counter.toDictionary())) {
+						bad++;
+					}
+				}
+				ParallelWordCounter parallel = new ParallelWordCounter(2);
+				Dictionary<String, Integer> words = parallel.countFile(channel);
+				if (!sameCounts(expected, n, parallel.getTokenCount(), words)) {
+					bad++;
+				}
+			} finally {
+				channel.close();
+			}
+		}
+		System.out.println(bad);
+	}
+
+	/** Returns true if the words counted and their counts are the ones expected. */
+	private static boolean sameCounts(SymbolCounter expected, long n, long counted,
+	Dictionary<String, Integer> words) {
+		if (counted != n || words.size() != expected.size()) {
+			return false;
+		}
+		Iterator<String> keys = expected.getKeySet().iterator();
+		while (keys.hasNext()) {
+			String word = keys.next();
+			Integer count = words.getValue(word);
+			if (count == null || count != expected.getCount(word)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,223 @@
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+  * Metrics
+  * Measures where a WordFreqs run spends its time, cheaply enough to leave on. Stages
+  * are timed once each with System.nanoTime. Reads are timed per buffer. Counting is
+  * too fine-grained to time every word, so one call in SAMPLE_INTERVAL to the
+  * counting TokenConsumer is timed and the total is estimated from the samples, less
+  * the cost of reading the clock, which is close to the cost of counting a word. The
+  * counting table reports its own resizes and probe lengths when the summary is
+  * written.
+  *
+  * The summary is one JSON object on one line, so the periodic summaries of a
+  * streaming run form a JSON Lines file.
+  */
+
+public class Metrics {
+	/** One call in this many to a sampled TokenConsumer is timed. */
+	public static final int SAMPLE_INTERVAL = 64;
+
+	private long started;
+	private ArrayList<String> stage_names;
+	private ArrayList<long[]> stage_nanos;
+	private long read_nanos;
+	private long chars;
+	private long bytes;
+	private long tokens;
+	private long samples;
+	private long sampled_nanos;
+	private InstrumentedTable table;
+	private int peak_entries;
+	private long timer_nanos;
+
+	public Metrics() {
+		started = System.nanoTime();
+		stage_names = new ArrayList<String>();
+		stage_nanos = new ArrayList<long[]>();
+		read_nanos = 0;
+		chars = 0;
+		bytes = 0;
+		tokens = 0;
+		samples = 0;
+		sampled_nanos = 0;
+		table = null;
+		peak_entries = 0;
+		timer_nanos = timerOverhead();
+	}
+
+	/** Gets the least time seen between two back-to-back calls to System.nanoTime. */
+	private static long timerOverhead() {
+		long least = Long.MAX_VALUE;
+		for (int i = 0; i < 1000; i++) {
+			long before = System.nanoTime();
+			long after = System.nanoTime();
+			least = Math.min(least, after - before);
+		}
+		return least;
+	}
+
+	/** Returns the start time to pass to endStage. */
+	public long startStage() {
+		return System.nanoTime();
+	}
+
+	/** Adds the time since stage_started to the named stage. */
+	public void endStage(String name, long stage_started) {
+		long elapsed = System.nanoTime() - stage_started;
+		int index = stage_names.indexOf(name);
+		if (index < 0) {
+			stage_names.add(name);
+			stage_nanos.add(new long[] {elapsed});
+		} else {
+			stage_nanos.get(index)[0] += elapsed;
+		}
+	}
+
+	/** Sets the table words are counted into, whose resizes and probe lengths are
+	  * reported in the summary.
+	  */
+	public void setTable(InstrumentedTable table) {
+		this.table = table;
+		observeEntries(table.size());
+	}
+
+	/** Records the current number of entries, keeping the largest seen. */
+	public void observeEntries(int entries) {
+		if (entries > peak_entries) {
+			peak_entries = entries;
+		}
+	}
+
+	public void addTokens(long count) {
+		tokens += count;
+	}
+
+	public void addBytes(long count) {
+		bytes += count;
+	}
+
+	/** Wraps a stream to count the bytes read from it. */
+	public InputStream countBytes(InputStream input) {
+		return new FilterInputStream(input) {
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					bytes++;
+				}
+				return b;
+			}
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int read = super.read(buffer, offset, length);
+				if (read > 0) {
+					bytes += read;
+				}
+				return read;
+			}
+		};
+	}
+
+	/** Wraps a reader to time every read and count the characters read. */
+	public Reader timeReads(Reader reader) {
+		return new FilterReader(reader) {
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				long read_started = System.nanoTime();
+				int read = super.read(buffer, offset, length);
+				read_nanos += System.nanoTime() - read_started;
+				if (read > 0) {
+					chars += read;
+				}
+				return read;
+			}
+		};
+	}
+
+	/** Wraps a consumer to count its words and time one call in SAMPLE_INTERVAL.
+	  * A sampled call during which the table resized has the resize time taken out,
+	  * since resizes are reported on their own.
+	  */
+	public TokenConsumer sampleCounting(final TokenConsumer consumer) {
+		return new TokenConsumer() {
+			private int until_sample = SAMPLE_INTERVAL;
+
+			public void accept(char[] buffer, int start, int length) {
+				tokens++;
+				if (--until_sample > 0) {
+					consumer.accept(buffer, start, length);
+					return;
+				}
+				until_sample = SAMPLE_INTERVAL;
+				long resize_before = table == null ? 0 : table.getResizeNanos();
+				long call_started = System.nanoTime();
+				consumer.accept(buffer, start, length);
+				long elapsed = System.nanoTime() - call_started - timer_nanos;
+				if (table != null) {
+					elapsed -= table.getResizeNanos() - resize_before;
+				}
+				sampled_nanos += Math.max(0, elapsed);
+				samples++;
+			}
+		};
+	}
+
+	private static double millis(long nanos) {
+		return Math.round(nanos / 1e4) / 100.0;
+	}
+
+	/** Returns the summary as one line of JSON. */
+	public String toJson() {
+		long elapsed = System.nanoTime() - started;
+		StringBuilder json = new StringBuilder();
+		json.append("{\"elapsed_ms\": ").append(millis(elapsed));
+		json.append(", \"stages_ms\": {");
+		for (int i = 0; i < stage_names.size(); i++) {
+			if (i > 0) {
+				json.append(", ");
+			}
+			json.append('"').append(stage_names.get(i)).append("\": ").append(millis(stage_nanos.get(i)[0]));
+		}
+		json.append('}');
+		long resize_nanos = table == null ? 0 : table.getResizeNanos();
+		if (samples > 0) {
+			long count_nanos = (long) (sampled_nanos * (tokens / (double) samples));
+			json.append(", \"scan_ms\": {\"read\": ").append(millis(read_nanos));
+			json.append(", \"count_estimate\": ").append(millis(count_nanos));
+			json.append(", \"rehash\": ").append(millis(resize_nanos)).append('}');
+			json.append(", \"count_samples\": ").append(samples);
+		}
+		json.append(", \"tokens\": ").append(tokens);
+		json.append(", \"chars\": ").append(chars);
+		json.append(", \"bytes\": ").append(bytes);
+		if (table != null) {
+			observeEntries(table.size());
+			json.append(", \"entries\": ").append(table.size());
+			json.append(", \"rehash_count\": ").append(table.getResizeCount());
+			json.append(", \"rehash_ms\": ").append(millis(resize_nanos));
+			long[] histogram = table.getProbeHistogram();
+			json.append(", \"probe_length_histogram\": [");
+			/** Index 0 is always empty, since every entry takes at least one probe. */
+			for (int i = 1; i < histogram.length; i++) {
+				if (i > 1) {
+					json.append(", ");
+				}
+				json.append(histogram[i]);
+			}
+			json.append(']');
+		}
+		json.append(", \"peak_entries\": ").append(peak_entries);
+		json.append('}');
+		return json.toString();
+	}
+
+	/** Writes the summary as one line. */
+	public void write(PrintStream output) {
+		output.println(toJson());
+		output.flush();
+	}
+}
@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * NGramCounter
+  * Counts the runs of n consecutive words (n-grams) of a token stream. Words get
+  * their IDs from a SymbolTable, and an n-gram is keyed by its tuple of IDs, so no
+  * String is made for an n-gram until it is printed. The hash of the last n IDs is
+  * kept up to date as each word arrives by removing the oldest ID and adding the
+  * newest, so the cost per word does not depend on n. Equal hashes are confirmed by
+  * comparing the tuples, so collisions never merge two n-grams.
+  *
+  * The tuples are packed n ints apart in one array, with the counts in a parallel
+  * array; the table slots hold entry index + 1 (0 marks an empty slot) and a copy of
+  * the hash, found by linear probing. Not thread-safe.
+  */
+
+public class NGramCounter implements TokenConsumer, InstrumentedTable {
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final double MAX_LOAD_FACTOR = 0.5;
+	/** Multiplier of the polynomial hash over IDs. */
+	private static final int HASH_BASE = 0x01000193;
+
+	private int n;
+	private SymbolTable symbols;
+	/** The last n IDs, oldest at window_start once the window is full. */
+	private int[] window;
+	private int window_start;
+	private int window_size;
+	/** HASH_BASE to the power n - 1, the weight of the oldest ID in the hash. */
+	private int oldest_weight;
+	private int window_hash;
+	private int[] slot_entries;
+	private int[] slot_hashes;
+	private int mask;
+	private int[] grams;
+	private int[] counts;
+	private int num_entries;
+	private long token_count;
+	private long gram_count;
+	private int resize_count;
+	private long resize_nanos;
+
+	public NGramCounter(int n) {
+		this(n, new SymbolTable());
+	}
+
+	/** Creates a counter over a symbol table that may be shared with other counters. */
+	public NGramCounter(int n, SymbolTable symbols) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("n must be positive: " + n);
+		}
+		this.n = n;
+		this.symbols = symbols;
+		window = new int[n];
+		oldest_weight = 1;
+		for (int i = 1; i < n; i++) {
+			oldest_weight *= HASH_BASE;
+		}
+		slot_entries = new int[DEFAULT_CAPACITY];
+		slot_hashes = new int[DEFAULT_CAPACITY];
+		mask = DEFAULT_CAPACITY - 1;
+		grams = new int[DEFAULT_CAPACITY / 2 * n];
+		counts = new int[DEFAULT_CAPACITY / 2];
+		num_entries = 0;
+		token_count = 0;
+		gram_count = 0;
+		resize_count = 0;
+		resize_nanos = 0;
+		reset();
+	}
+
+	/** Class that stores the key and value of a specific data entry. */
+	private static class KVPair implements DictPair<String, Integer> {
+		private String key;
+		private Integer value;
+
+		public KVPair(String key_value, Integer data_value) {
+			key = key_value;
+			value = data_value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		public Integer getValue() {
+			return value;
+		}
+	}
+
+	/** Starts a new token stream, so no n-gram spans the end of the last one. */
+	public void reset() {
+		window_start = 0;
+		window_size = 0;
+		window_hash = 0;
+	}
+
+	/** Counts the n-gram ending with this word, once n words have been seen. */
+	public void accept(char[] chars, int start, int length) {
+		addWord(symbols.intern(chars, start, length));
+	}
+
+	/** Counts the n-gram ending with the word with the given ID. */
+	public void addWord(int id) {
+		token_count++;
+		if (window_size == n) {
+			window_hash -= window[window_start] * oldest_weight;
+			window[window_start] = id;
+			window_start = window_start + 1 == n ? 0 : window_start + 1;
+		} else {
+			window[window_size++] = id;
+		}
+		window_hash = window_hash * HASH_BASE + id;
+		if (window_size == n) {
+			addWindow(window_hash);
+		}
+	}
+
+	/** Spreads the polynomial hash over the table, since it is linear in the IDs. */
+	private static int spread(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/** Returns true if the entry's tuple is the current window. */
+	private boolean sameAsWindow(int entry) {
+		int base = entry * n;
+		int index = window_start;
+		for (int i = 0; i < n; i++) {
+			if (grams[base + i] != window[index]) {
+				return false;
+			}
+			index = index + 1 == n ? 0 : index + 1;
+		}
+		return true;
+	}
+
+	private void addWindow(int hash) {
+		gram_count++;
+		int index = spread(hash) & mask;
+		while (slot_entries[index] != 0) {
+			int entry = slot_entries[index] - 1;
+			if (slot_hashes[index] == hash && sameAsWindow(entry)) {
+				counts[entry]++;
+				return;
+			}
+			index = (index + 1) & mask;
+		}
+		int entry = num_entries;
+		if (entry == counts.length) {
+			counts = Arrays.copyOf(counts, entry * 2);
+			grams = Arrays.copyOf(grams, entry * 2 * n);
+		}
+		int base = entry * n;
+		int window_index = window_start;
+		for (int i = 0; i < n; i++) {
+			grams[base + i] = window[window_index];
+			window_index = window_index + 1 == n ? 0 : window_index + 1;
+		}
+		counts[entry] = 1;
+		slot_entries[index] = entry + 1;
+		slot_hashes[index] = hash;
+		num_entries++;
+		if (num_entries > slot_entries.length * MAX_LOAD_FACTOR) {
+			grow();
+		}
+	}
+
+	/** Doubles the number of slots. Entries do not move. */
+	private void grow() {
+		int[] old_entries = slot_entries;
+		int[] old_hashes = slot_hashes;
+		long started = System.nanoTime();
+		int capacity = old_entries.length * 2;
+		slot_entries = new int[capacity];
+		slot_hashes = new int[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < old_entries.length; i++) {
+			if (old_entries[i] != 0) {
+				int index = spread(old_hashes[i]) & mask;
+				while (slot_entries[index] != 0) {
+					index = (index + 1) & mask;
+				}
+				slot_entries[index] = old_entries[i];
+				slot_hashes[index] = old_hashes[i];
+			}
+		}
+		resize_count++;
+		resize_nanos += System.nanoTime() - started;
+	}
+
+	/** Gets the words of an entry joined by spaces. */
+	private String gramAt(int entry) {
+		StringBuilder gram = new StringBuilder();
+		int base = entry * n;
+		for (int i = 0; i < n; i++) {
+			if (i > 0) {
+				gram.append(' ');
+			}
+			gram.append(symbols.getWord(grams[base + i]));
+		}
+		return gram.toString();
+	}
+
+	/** Gets the count of an n-gram given as its words separated by single spaces,
+	  * or 0 if it was never seen.
+	  */
+	public int getCount(String gram) {
+		String[] words = gram.split(" ");
+		if (words.length != n) {
+			return 0;
+		}
+		int[] ids = new int[n];
+		int hash = 0;
+		for (int i = 0; i < n; i++) {
+			ids[i] = symbols.find(words[i]);
+			if (ids[i] < 0) {
+				return 0;
+			}
+			hash = hash * HASH_BASE + ids[i];
+		}
+		int index = spread(hash) & mask;
+		while (slot_entries[index] != 0) {
+			int entry = slot_entries[index] - 1;
+			if (slot_hashes[index] == hash
+			&& Arrays.equals(grams, entry * n, entry * n + n, ids, 0, n)) {
+				return counts[entry];
+			}
+			index = (index + 1) & mask;
+		}
+		return 0;
+	}
+
+	/** Passes every n-gram, as its words joined by spaces, and its count to action. */
+	public void forEachCount(ObjIntConsumer<? super String> action) {
+		for (int entry = 0; entry < num_entries; entry++) {
+			action.accept(gramAt(entry), counts[entry]);
+		}
+	}
+
+	/** Returns the top k n-grams, ranked like TopKSelector, or all of them if k is 0.
+	  * Only n-grams whose count could enter the selection are turned into Strings.
+	  */
+	public ArrayList<DictPair<String, Integer>> top(int k) {
+		TopKSelector selector = k == 0 ? new TopKSelector() : new TopKSelector(k);
+		for (int entry = 0; entry < num_entries; entry++) {
+			if (selector.accepts(counts[entry])) {
+				selector.offer(gramAt(entry), counts[entry]);
+			}
+		}
+		return selector.result();
+	}
+
+	/** Copies the n-grams into a dictionary keyed by their words joined by spaces. */
+	public CounterDictionary toDictionary() {
+		final OpenHashCounterDictionary words = OpenHashCounterDictionary.withExpectedSize(num_entries);
+		forEachCount(new ObjIntConsumer<String>() {
+			public void accept(String gram, int count) {
+				words.addTo(gram, count);
+			}
+		});
+		return words;
+	}
+
+	public int getN() {
+		return n;
+	}
+
+	/** Gets the number of words seen. */
+	public long getTokenCount() {
+		return token_count;
+	}
+
+	/** Gets the number of n-grams counted, n - 1 fewer than the words of each stream. */
+	public long getGramCount() {
+		return gram_count;
+	}
+
+	/** Gets the number of distinct n-grams. */
+	public int size() {
+		return num_entries;
+	}
+
+	public int getResizeCount() {
+		return resize_count;
+	}
+
+	public long getResizeNanos() {
+		return resize_nanos;
+	}
+
+	/** Gets the number of n-grams found on each probe, from each one's distance to its
+	  * home slot.
+	  */
+	public long[] getProbeHistogram() {
+		long[] histogram = new long[HashStatistics.HISTOGRAM_SIZE];
+		for (int i = 0; i < slot_entries.length; i++) {
+			if (slot_entries[i] != 0) {
+				int probes = ((i - spread(slot_hashes[i])) & mask) + 1;
+				histogram[Math.min(probes, histogram.length - 1)]++;
+			}
+		}
+		return histogram;
+	}
+}
@@ -0,0 +1,10 @@
+/**
+  * ObjectHashStrategy
+  * The default HashStrategy: uses the key's own hashCode().
+  */
+
+public class ObjectHashStrategy implements HashStrategy {
+	public int hash(Object key) {
+		return key.hashCode();
+	}
+}
@@ -0,0 +1,716 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * OffHeapCounterDictionary
+  * A dictionary from words to counts that keeps its entries outside the Java heap,
+  * for vocabularies too large to hold as objects. Keys are stored once as a varint
+  * length and UTF-8 bytes in an arena of direct buffers. The open-addressed table
+  * is also direct memory, 16 bytes a slot:
+  *     long key  arena block + 1 in the high half, offset in the low half; 0 if empty
+  *     int  String.hashCode of the key
+  *     int  count
+  * Lookups compare a word's chars with the stored bytes directly, so only new words
+  * are encoded. An entry costs its slots and its key bytes, with no object headers
+  * or pointers, and the GC never scans it. Total native memory is capped by the
+  * limit given to the constructor; going over it throws IllegalStateException.
+  * Direct buffers also count against the JVM's -XX:MaxDirectMemorySize, which is
+  * the -Xmx value unless it is set, so a limit above that is rejected when the
+  * dictionary is created.
+  *
+  * The memory is freed by close(), not by the GC, and the dictionary cannot be used
+  * afterwards. Removing a word frees its slot but not its key bytes, which are
+  * reclaimed only by clear(). Not thread-safe.
+  */
+
+public class OffHeapCounterDictionary implements CounterDictionary, TokenConsumer, InstrumentedTable, AutoCloseable {
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final double MAX_LOAD_FACTOR = 0.7;
+	private static final int SLOT_BYTES = 16;
+	/** Slots per table segment, so a segment stays under the 2 GB limit of a buffer. */
+	private static final int SEGMENT_BITS = 26;
+	private static final int SEGMENT_SLOTS = 1 << SEGMENT_BITS;
+	/** Bytes in an arena block, unless a key is longer. */
+	private static final int ARENA_BLOCK_SIZE = 16 * 1024 * 1024;
+	/** Largest table, in slots: 2^31, or 32 GB of slots. */
+	private static final long MAX_SLOTS = 1L << 31;
+	/** sun.misc.Unsafe and its invokeCleaner method, which frees a direct buffer, or
+	  * null where they cannot be reached.
+	  */
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+	static {
+		Object unsafe = null;
+		Method invoke_cleaner = null;
+		try {
+			Class<?> unsafe_class = Class.forName("sun.misc.Unsafe");
+			Field field = unsafe_class.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			unsafe = field.get(null);
+			invoke_cleaner = unsafe_class.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			unsafe = null;
+			invoke_cleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invoke_cleaner;
+	}
+
+	private long memory_limit;
+	private long memory_used;
+	private ByteBuffer[] table;
+	private long num_slots;
+	private long mask;
+	private int shift;
+	private ArrayList<ByteBuffer> arena;
+	private int arena_position;
+	private int num_entries;
+	private int resize_count;
+	private long resize_nanos;
+	private boolean closed;
+	/** The key being looked up, as UTF-8. */
+	private byte[] scratch;
+
+	/** Creates a dictionary that may use at most memory_limit bytes of native memory. */
+	public OffHeapCounterDictionary(long memory_limit) {
+		this(memory_limit, 0);
+	}
+
+	/** Creates a dictionary that can hold the expected number of words without growing. */
+	public OffHeapCounterDictionary(long memory_limit, long expected_words) {
+		if (memory_limit <= 0) {
+			throw new IllegalArgumentException("memory_limit must be positive: " + memory_limit);
+		}
+		long direct_limit = maxDirectMemory();
+		if (memory_limit > direct_limit) {
+			throw new IllegalStateException("Off-heap limit of " + memory_limit + " bytes is more than the "
+			+ direct_limit + " bytes of direct memory the JVM allows; raise it with -XX:MaxDirectMemorySize");
+		}
+		this.memory_limit = memory_limit;
+		memory_used = 0;
+		long slots = DEFAULT_CAPACITY;
+		while (slots < MAX_SLOTS && expected_words + 1 > slots * MAX_LOAD_FACTOR) {
+			slots *= 2;
+		}
+		table = allocateTable(slots);
+		arena = new ArrayList<ByteBuffer>();
+		arena_position = 0;
+		num_entries = 0;
+		resize_count = 0;
+		resize_nanos = 0;
+		closed = false;
+		scratch = new byte[64];
+	}
+
+	/** Class that stores the key and value of a specific data entry. */
+	private static class KVPair implements DictPair<String, Integer> {
+		private String key;
+		private Integer value;
+
+		public KVPair(String key_value, Integer data_value) {
+			key = key_value;
+			value = data_value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		public Integer getValue() {
+			return value;
+		}
+	}
+
+	/** Returns the most direct buffer memory the JVM allows, from -XX:MaxDirectMemorySize
+	  * or -Xmx when that is not set, or Long.MAX_VALUE if it cannot be found out.
+	  */
+	public static long maxDirectMemory() {
+		try {
+			com.sun.management.HotSpotDiagnosticMXBean diagnostics =
+			ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+			long limit = Long.parseLong(diagnostics.getVMOption("MaxDirectMemorySize").getValue());
+			if (limit == 0) {
+				limit = Runtime.getRuntime().maxMemory();
+			}
+			return limit;
+		} catch (RuntimeException e) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/** Allocates a direct buffer, counting it against the memory limit. */
+	private ByteBuffer allocate(long bytes) {
+		if (memory_used + bytes > memory_limit) {
+			throw new IllegalStateException("Off-heap dictionary needs more than its limit of "
+			+ memory_limit + " bytes (" + num_entries + " words, " + memory_used + " bytes in use)");
+		}
+		ByteBuffer buffer;
+		try {
+			buffer = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+		} catch (OutOfMemoryError e) {
+			/** Other direct buffers in the process share -XX:MaxDirectMemorySize. */
+			throw new IllegalStateException("Off-heap dictionary could not get " + bytes
+			+ " more bytes of direct memory (" + num_entries + " words, " + memory_used
+			+ " bytes in use); raise -XX:MaxDirectMemorySize");
+		}
+		memory_used += bytes;
+		return buffer;
+	}
+
+	/** Allocates a table of the given number of slots. If the limit is reached partway,
+	  * the segments already allocated are freed before the exception is thrown.
+	  */
+	private ByteBuffer[] allocateTable(long slots) {
+		int segment_slots = (int) Math.min(slots, SEGMENT_SLOTS);
+		ByteBuffer[] segments = new ByteBuffer[(int) (slots / segment_slots)];
+		boolean complete = false;
+		try {
+			for (int i = 0; i < segments.length; i++) {
+				segments[i] = allocate((long) segment_slots * SLOT_BYTES);
+			}
+			complete = true;
+		} finally {
+			if (!complete) {
+				for (int i = 0; i < segments.length && segments[i] != null; i++) {
+					free(segments[i]);
+				}
+			}
+		}
+		num_slots = slots;
+		mask = slots - 1;
+		shift = 64 - Long.numberOfTrailingZeros(slots);
+		return segments;
+	}
+
+	/** Frees a direct buffer now rather than when the GC finds it. This needs
+	  * sun.misc.Unsafe; where that is not available the buffer is left to the GC.
+	  */
+	private void free(ByteBuffer buffer) {
+		memory_used -= buffer.capacity();
+		if (INVOKE_CLEANER != null) {
+			try {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			} catch (ReflectiveOperationException e) {
+				/** Left to the GC. */
+			}
+		}
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Off-heap dictionary is closed");
+		}
+	}
+
+	private ByteBuffer segment(long slot) {
+		return table[(int) (slot >>> SEGMENT_BITS)];
+	}
+
+	private static int offset(long slot) {
+		return (int) (slot & (SEGMENT_SLOTS - 1)) * SLOT_BYTES;
+	}
+
+	/** Takes a hash code and returns the slot its probe sequence starts at. */
+	private long homeSlot(int hash) {
+		return ((hash * 0x9E3779B97F4A7C15L) >>> shift) & mask;
+	}
+
+	/** Copies a word into scratch as UTF-8 and returns its length. */
+	private int encode(String key) {
+		int length = key.length();
+		if (length > scratch.length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			char c = key.charAt(i);
+			if (c >= 0x80) {
+				byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+				if (bytes.length > scratch.length) {
+					scratch = new byte[bytes.length];
+				}
+				System.arraycopy(bytes, 0, scratch, 0, bytes.length);
+				return bytes.length;
+			}
+			scratch[i] = (byte) c;
+		}
+		return length;
+	}
+
+	/** Copies an ASCII word from the tokenizer into scratch. */
+	private void encode(char[] chars, int start, int length) {
+		if (length > scratch.length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			scratch[i] = (byte) chars[start + i];
+		}
+	}
+
+	/** Gets the arena block of a key reference. */
+	private ByteBuffer blockOf(long key_ref) {
+		return arena.get((int) (key_ref >>> 32) - 1);
+	}
+
+	/** Reads the varint length of the key at key_ref. Returns the length in the low
+	  * half and the position of the key's first byte in the high half.
+	  */
+	private static long readLength(ByteBuffer block, long key_ref) {
+		int position = (int) key_ref;
+		int length = 0;
+		int shift_bits = 0;
+		byte b;
+		do {
+			b = block.get(position++);
+			length |= (b & 0x7F) << shift_bits;
+			shift_bits += 7;
+		} while (b < 0);
+		return ((long) position << 32) | length;
+	}
+
+	/** Returns true if the key stored at key_ref is the ASCII word in a char slice. */
+	private boolean keyEquals(long key_ref, char[] chars, int start, int length) {
+		ByteBuffer block = blockOf(key_ref);
+		long header = readLength(block, key_ref);
+		if ((int) header != length) {
+			return false;
+		}
+		int position = (int) (header >>> 32);
+		for (int i = 0; i < length; i++) {
+			if (block.get(position + i) != chars[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Returns true if the key stored at key_ref is key. ASCII keys are compared char
+	  * by char with the stored bytes; others are encoded first.
+	  */
+	private boolean keyEquals(long key_ref, String key) {
+		ByteBuffer block = blockOf(key_ref);
+		long header = readLength(block, key_ref);
+		int length = (int) header;
+		int position = (int) (header >>> 32);
+		if (length < key.length()) {
+			return false;
+		}
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c >= 0x80) {
+				int encoded = encode(key);
+				if (encoded != length) {
+					return false;
+				}
+				for (int j = 0; j < length; j++) {
+					if (block.get(position + j) != scratch[j]) {
+						return false;
+					}
+				}
+				return true;
+			}
+			if (block.get(position + i) != c) {
+				return false;
+			}
+		}
+		return length == key.length();
+	}
+
+	/** Reads back the key stored at key_ref. */
+	private String keyAt(long key_ref) {
+		ByteBuffer block = blockOf(key_ref);
+		long header = readLength(block, key_ref);
+		byte[] bytes = new byte[(int) header];
+		block.get((int) (header >>> 32), bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/** Appends the first length bytes of scratch to the arena.
+	  * @return The reference stored in the key's slot.
+	  */
+	private long storeKey(int length) {
+		int needed = 5 + length;
+		ByteBuffer block = arena.isEmpty() ? null : arena.get(arena.size() - 1);
+		if (block == null || arena_position + needed > block.capacity()) {
+			/** Blocks start small and grow with the dictionary, and the last one is
+			  * cut to fit in what is left of the limit.
+			  */
+			long block_size = Math.min(ARENA_BLOCK_SIZE, Math.max(4096, memory_used / 4));
+			block_size = Math.min(block_size, memory_limit - memory_used);
+			block = allocate(Math.max(needed, block_size));
+			arena.add(block);
+			arena_position = 0;
+		}
+		long key_ref = ((long) arena.size() << 32) | arena_position;
+		int value = length;
+		while ((value & ~0x7F) != 0) {
+			block.put(arena_position++, (byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		block.put(arena_position++, (byte) value);
+		block.put(arena_position, scratch, 0, length);
+		arena_position += length;
+		return key_ref;
+	}
+
+	/** Returns the slot holding key, or the empty slot where it would go as a
+	  * negative number minus one.
+	  */
+	private long find(String key, int hash) {
+		long slot = homeSlot(hash);
+		while (true) {
+			ByteBuffer segment = segment(slot);
+			int offset = offset(slot);
+			long key_ref = segment.getLong(offset);
+			if (key_ref == 0) {
+				return -slot - 1;
+			}
+			if (segment.getInt(offset + 8) == hash && keyEquals(key_ref, key)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private long find(char[] chars, int start, int length, int hash) {
+		long slot = homeSlot(hash);
+		while (true) {
+			ByteBuffer segment = segment(slot);
+			int offset = offset(slot);
+			long key_ref = segment.getLong(offset);
+			if (key_ref == 0) {
+				return -slot - 1;
+			}
+			if (segment.getInt(offset + 8) == hash && keyEquals(key_ref, chars, start, length)) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/** Adds delta to the count in a slot found by find, or if the key was not found,
+	  * stores the key waiting in scratch in the empty slot with a count of delta.
+	  */
+	private int addAt(long slot, int hash, int length, int delta) {
+		if (slot >= 0) {
+			ByteBuffer segment = segment(slot);
+			int offset = offset(slot) + 12;
+			int count = segment.getInt(offset) + delta;
+			segment.putInt(offset, count);
+			return count;
+		}
+		slot = -slot - 1;
+		long key_ref = storeKey(length);
+		ByteBuffer segment = segment(slot);
+		int offset = offset(slot);
+		segment.putLong(offset, key_ref);
+		segment.putInt(offset + 8, hash);
+		segment.putInt(offset + 12, delta);
+		num_entries++;
+		if (num_entries > num_slots * MAX_LOAD_FACTOR) {
+			grow();
+		}
+		return delta;
+	}
+
+	/** Counts one word from the tokenizer. ASCII words are hashed, compared and
+	  * encoded straight from the slice. The rare word with other characters, from
+	  * a tokenizer in Unicode mode, is counted as a String.
+	  */
+	public void accept(char[] chars, int start, int length) {
+		checkOpen();
+		int hash = 0;
+		int all_bits = 0;
+		for (int i = start; i < start + length; i++) {
+			hash = 31 * hash + chars[i];
+			all_bits |= chars[i];
+		}
+		if (all_bits >= 0x80) {
+			addTo(new String(chars, start, length), 1);
+			return;
+		}
+		long slot = find(chars, start, length, hash);
+		if (slot < 0) {
+			encode(chars, start, length);
+		}
+		addAt(slot, hash, length, 1);
+	}
+
+	public int addTo(String key, int delta) {
+		checkOpen();
+		int hash = key.hashCode();
+		long slot = find(key, hash);
+		return addAt(slot, hash, slot < 0 ? encode(key) : 0, delta);
+	}
+
+	public int increment(String key) {
+		return addTo(key, 1);
+	}
+
+	/** Returns the slot of a word, or a negative number if it is not in the dictionary. */
+	private long slotOf(String key) {
+		checkOpen();
+		return find(key, key.hashCode());
+	}
+
+	public int getCount(String key) {
+		long slot = slotOf(key);
+		return slot < 0 ? 0 : segment(slot).getInt(offset(slot) + 12);
+	}
+
+	/** Doubles the number of slots and moves every entry to its new slot. The old and
+	  * new tables both count against the limit while this runs.
+	  */
+	private void grow() {
+		if (num_slots >= MAX_SLOTS) {
+			throw new IllegalStateException("Off-heap dictionary is full at " + num_entries + " words");
+		}
+		ByteBuffer[] old_table = table;
+		long old_slots = num_slots;
+		long started = System.nanoTime();
+		table = allocateTable(old_slots * 2);
+		for (long i = 0; i < old_slots; i++) {
+			ByteBuffer old_segment = old_table[(int) (i >>> SEGMENT_BITS)];
+			int old_offset = offset(i);
+			long key_ref = old_segment.getLong(old_offset);
+			if (key_ref != 0) {
+				int hash = old_segment.getInt(old_offset + 8);
+				long slot = homeSlot(hash);
+				while (segment(slot).getLong(offset(slot)) != 0) {
+					slot = (slot + 1) & mask;
+				}
+				ByteBuffer segment = segment(slot);
+				int offset = offset(slot);
+				segment.putLong(offset, key_ref);
+				segment.putInt(offset + 8, hash);
+				segment.putInt(offset + 12, old_segment.getInt(old_offset + 12));
+			}
+		}
+		for (int i = 0; i < old_table.length; i++) {
+			free(old_table[i]);
+		}
+		resize_count++;
+		resize_nanos += System.nanoTime() - started;
+	}
+
+	/** Empties a slot and shifts later entries of the same probe run back into the
+	  * gap, so that lookups never stop early at the removed slot.
+	  */
+	private void removeAt(long slot) {
+		long gap = slot;
+		long next = (gap + 1) & mask;
+		while (segment(next).getLong(offset(next)) != 0) {
+			ByteBuffer next_segment = segment(next);
+			int next_offset = offset(next);
+			long home = homeSlot(next_segment.getInt(next_offset + 8));
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				ByteBuffer gap_segment = segment(gap);
+				int gap_offset = offset(gap);
+				gap_segment.putLong(gap_offset, next_segment.getLong(next_offset));
+				gap_segment.putInt(gap_offset + 8, next_segment.getInt(next_offset + 8));
+				gap_segment.putInt(gap_offset + 12, next_segment.getInt(next_offset + 12));
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		segment(gap).putLong(offset(gap), 0);
+		segment(gap).putInt(offset(gap) + 12, 0);
+		num_entries--;
+	}
+
+	/** Adds a new entry to this dictionary. If the given key already exists in
+	  * the dictionary, replaces the corresponding value.
+	  * @return Either null if the new entry was added to the dictionary
+	  *         or the value that was associated with key if that value
+	  *         was replaced.
+	  */
+	public Integer add(String key, Integer value) {
+		long slot = slotOf(key);
+		if (slot >= 0) {
+			ByteBuffer segment = segment(slot);
+			Integer old_value = segment.getInt(offset(slot) + 12);
+			segment.putInt(offset(slot) + 12, value);
+			return old_value;
+		}
+		addTo(key, value);
+		return null;
+	}
+
+	/** Removes a specific entry from this dictionary. Its key bytes stay in the arena.
+	  * @return Either the value that was associated with the key,
+	  *         or null if the key was not in the dictionary.
+	  */
+	public Integer remove(String key) {
+		long slot = slotOf(key);
+		if (slot < 0) {
+			return null;
+		}
+		Integer old_value = segment(slot).getInt(offset(slot) + 12);
+		removeAt(slot);
+		return old_value;
+	}
+
+	public Integer getValue(String key) {
+		long slot = slotOf(key);
+		return slot < 0 ? null : segment(slot).getInt(offset(slot) + 12);
+	}
+
+	public boolean contains(String key) {
+		return slotOf(key) >= 0;
+	}
+
+	/** Returns a Set that contains all the keys stored in the dictionary. The keys
+	  * are copied onto the heap.
+	  */
+	public Set<String> getKeySet() {
+		final Set<String> key_set = new JavaSetWrapper<String>();
+		forEachCount(new ObjIntConsumer<String>() {
+			public void accept(String key, int count) {
+				key_set.add(key);
+			}
+		});
+		return key_set;
+	}
+
+	/** Returns a Set of the key-value pairs stored in the dictionary. The entries
+	  * are copied onto the heap.
+	  */
+	public Set<DictPair<String, Integer>> getEntrySet() {
+		final Set<DictPair<String, Integer>> pair_set = new JavaSetWrapper<DictPair<String, Integer>>();
+		forEachCount(new ObjIntConsumer<String>() {
+			public void accept(String key, int count) {
+				pair_set.add(new KVPair(key, count));
+			}
+		});
+		return pair_set;
+	}
+
+	public void forEachEntry(final BiConsumer<? super String, ? super Integer> action) {
+		forEachCount(new ObjIntConsumer<String>() {
+			public void accept(String key, int count) {
+				action.accept(key, count);
+			}
+		});
+	}
+
+	/** Passes every word and its count to action. Each word is decoded into a new
+	  * String, since the dictionary keeps none.
+	  */
+	public void forEachCount(ObjIntConsumer<? super String> action) {
+		checkOpen();
+		for (long i = 0; i < num_slots; i++) {
+			ByteBuffer segment = segment(i);
+			int offset = offset(i);
+			long key_ref = segment.getLong(offset);
+			if (key_ref != 0) {
+				action.accept(keyAt(key_ref), segment.getInt(offset + 12));
+			}
+		}
+	}
+
+	/** Adds every entry of another dictionary to this dictionary. If a key is
+	  * in both dictionaries, its value becomes combiner.apply(this value,
+	  * other value).
+	  */
+	public void mergeAll(Dictionary<String, Integer> other, final BinaryOperator<Integer> combiner) {
+		other.forEachEntry(new BiConsumer<String, Integer>() {
+			public void accept(String key, Integer value) {
+				long slot = slotOf(key);
+				if (slot < 0) {
+					addTo(key, value);
+				} else {
+					ByteBuffer segment = segment(slot);
+					int offset = offset(slot) + 12;
+					segment.putInt(offset, combiner.apply(segment.getInt(offset), value));
+				}
+			}
+		});
+	}
+
+	/** Gets the native memory in use, in bytes. */
+	public long getMemoryUsed() {
+		return memory_used;
+	}
+
+	public long getMemoryLimit() {
+		return memory_limit;
+	}
+
+	public int getResizeCount() {
+		return resize_count;
+	}
+
+	public long getResizeNanos() {
+		return resize_nanos;
+	}
+
+	/** Gets the number of entries found on each probe, from each entry's distance to
+	  * its home slot.
+	  */
+	public long[] getProbeHistogram() {
+		checkOpen();
+		long[] histogram = new long[HashStatistics.HISTOGRAM_SIZE];
+		for (long i = 0; i < num_slots; i++) {
+			ByteBuffer segment = segment(i);
+			int offset = offset(i);
+			if (segment.getLong(offset) != 0) {
+				long probes = ((i - homeSlot(segment.getInt(offset + 8))) & mask) + 1;
+				histogram[(int) Math.min(probes, histogram.length - 1)]++;
+			}
+		}
+		return histogram;
+	}
+
+	public int size() {
+		return num_entries;
+	}
+
+	public boolean isEmpty() {
+		return num_entries == 0;
+	}
+
+	/** Removes all entries from this dictionary and frees the arena. The table keeps
+	  * its size.
+	  */
+	public void clear() {
+		checkOpen();
+		for (int i = 0; i < table.length; i++) {
+			ByteBuffer segment = table[i];
+			for (int offset = 0; offset < segment.capacity(); offset += SLOT_BYTES) {
+				segment.putLong(offset, 0);
+				segment.putInt(offset + 12, 0);
+			}
+		}
+		for (int i = 0; i < arena.size(); i++) {
+			free(arena.get(i));
+		}
+		arena.clear();
+		arena_position = 0;
+		num_entries = 0;
+	}
+
+	/** Frees all native memory. The dictionary cannot be used afterwards. Closing it
+	  * again does nothing.
+	  */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		for (int i = 0; i < table.length; i++) {
+			free(table[i]);
+		}
+		for (int i = 0; i < arena.size(); i++) {
+			free(arena.get(i));
+		}
+		table = null;
+		arena = null;
+		num_entries = 0;
+		closed = true;
+	}
+}
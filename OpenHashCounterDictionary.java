@@ -0,0 +1,328 @@
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * OpenHashCounterDictionary
+  * A dictionary from words to counts built for counting. Keys, their hash codes and
+  * their counts are kept in parallel arrays and found by linear probing, so
+  * increment and addTo update a count with a single probe sequence and no boxing.
+  * The Dictionary methods are still available for callers that use the generic view.
+  */
+
+public class OpenHashCounterDictionary implements CounterDictionary, InstrumentedTable {
+	private static final int DEFAULT_CAPACITY = 128;
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	/** A null key marks an empty slot. */
+	private String[] keys;
+	private int[] hashes;
+	private int[] counts;
+	private int num_entries;
+	private int mask;
+	private int shift;
+	private int resize_count;
+	private long resize_nanos;
+
+	public OpenHashCounterDictionary() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/** Creates a dictionary with at least the given number of slots. */
+	public OpenHashCounterDictionary(int capacity) {
+		int slots = 2;
+		while (slots < capacity) {
+			slots *= 2;
+		}
+		allocate(slots);
+		num_entries = 0;
+		resize_count = 0;
+		resize_nanos = 0;
+	}
+
+	/** Creates a dictionary with enough slots to hold the expected number of words
+	  * without growing.
+	  */
+	public static OpenHashCounterDictionary withExpectedSize(int expected_entries) {
+		return new OpenHashCounterDictionary((int) Math.min(1 << 30,
+		(long) Math.ceil((expected_entries + 1) / MAX_LOAD_FACTOR)));
+	}
+
+	private void allocate(int slots) {
+		keys = new String[slots];
+		hashes = new int[slots];
+		counts = new int[slots];
+		mask = slots - 1;
+		shift = 32 - Integer.numberOfTrailingZeros(slots);
+	}
+
+	/** Class that stores the key and value of a specific data entry. */
+	private static class KVPair implements DictPair<String, Integer> {
+		private String key;
+		private Integer value;
+
+		public KVPair(String key_value, Integer data_value) {
+			key = key_value;
+			value = data_value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		public Integer getValue() {
+			return value;
+		}
+	}
+
+	/** Takes a hash code and returns the slot its probe sequence starts at. Multiplying
+	  * by the golden ratio spreads the similar hash codes of short words over the table.
+	  */
+	private int homeSlot(int hash) {
+		return (hash * 0x9E3779B9) >>> shift;
+	}
+
+	/** Returns the slot holding key, or -1 if the key is not in the dictionary. */
+	private int find(String key, int hash) {
+		int index = homeSlot(hash);
+		while (keys[index] != null) {
+			if (hashes[index] == hash && key.equals(keys[index])) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/** Adds delta to the count of a word, adding the word with a count of delta
+	  * if it is not in the dictionary.
+	  * @return The new count of the word.
+	  */
+	public int addTo(String key, int delta) {
+		int hash = key.hashCode();
+		int index = homeSlot(hash);
+		while (keys[index] != null) {
+			if (hashes[index] == hash && key.equals(keys[index])) {
+				counts[index] += delta;
+				return counts[index];
+			}
+			index = (index + 1) & mask;
+		}
+		keys[index] = key;
+		hashes[index] = hash;
+		counts[index] = delta;
+		num_entries++;
+		if (num_entries > keys.length * MAX_LOAD_FACTOR) {
+			grow();
+		}
+		return delta;
+	}
+
+	/** Adds one to the count of a word.
+	  * @return The new count of the word.
+	  */
+	public int increment(String key) {
+		return addTo(key, 1);
+	}
+
+	/** Gets the count of a word, or 0 if it is not in the dictionary. */
+	public int getCount(String key) {
+		int index = find(key, key.hashCode());
+		if (index < 0) {
+			return 0;
+		}
+		return counts[index];
+	}
+
+	/** Doubles the number of slots and moves every entry to its new slot. */
+	private void grow() {
+		String[] old_keys = keys;
+		int[] old_hashes = hashes;
+		int[] old_counts = counts;
+		long started = System.nanoTime();
+		allocate(old_keys.length * 2);
+		resize_count++;
+		for (int i = 0; i < old_keys.length; i++) {
+			if (old_keys[i] != null) {
+				int index = homeSlot(old_hashes[i]);
+				while (keys[index] != null) {
+					index = (index + 1) & mask;
+				}
+				keys[index] = old_keys[i];
+				hashes[index] = old_hashes[i];
+				counts[index] = old_counts[i];
+			}
+		}
+		resize_nanos += System.nanoTime() - started;
+	}
+
+	/** Empties a slot and shifts later entries of the same probe run back into the
+	  * gap, so that lookups never stop early at the removed slot.
+	  */
+	private void removeAt(int index) {
+		int gap = index;
+		int next = (gap + 1) & mask;
+		while (keys[next] != null) {
+			int home = homeSlot(hashes[next]);
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				hashes[gap] = hashes[next];
+				counts[gap] = counts[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = null;
+		counts[gap] = 0;
+		num_entries--;
+	}
+
+	/** Adds a new entry to this dictionary. If the given key already exists in
+	  * the dictionary, replaces the corresponding value.
+	  * @return Either null if the new entry was added to the dictionary
+	  *         or the value that was associated with key if that value
+	  *         was replaced.
+	  */
+	public Integer add(String key, Integer value) {
+		int hash = key.hashCode();
+		int index = find(key, hash);
+		if (index >= 0) {
+			Integer old_value = counts[index];
+			counts[index] = value;
+			return old_value;
+		}
+		addTo(key, value);
+		return null;
+	}
+
+	/** Removes a specific entry from this dictionary.
+	  * @return Either the value that was associated with the key,
+	  *         or null if the key was not in the dictionary.
+	  */
+	public Integer remove(String key) {
+		int index = find(key, key.hashCode());
+		if (index < 0) {
+			return null;
+		}
+		Integer old_value = counts[index];
+		removeAt(index);
+		return old_value;
+	}
+
+	/** Retrieves from this dictionary the value associated with a given key.
+	  * @return Either the value that is associated with the search key
+	  *         or null if no such object exists.
+	  */
+	public Integer getValue(String key) {
+		int index = find(key, key.hashCode());
+		if (index < 0) {
+			return null;
+		}
+		return counts[index];
+	}
+
+	/** Sees whether a specific entry is in this dictionary. */
+	public boolean contains(String key) {
+		return find(key, key.hashCode()) >= 0;
+	}
+
+	/** Returns a Set that contains all the keys stored in the dictionary. */
+	public Set<String> getKeySet() {
+		Set<String> key_set = new JavaSetWrapper<String>();
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				key_set.add(keys[i]);
+			}
+		}
+		return key_set;
+	}
+
+	/** Returns a Set of the key-value pairs stored in the dictionary. */
+	public Set<DictPair<String, Integer>> getEntrySet() {
+		Set<DictPair<String, Integer>> pair_set = new JavaSetWrapper<DictPair<String, Integer>>();
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				pair_set.add(new KVPair(keys[i], counts[i]));
+			}
+		}
+		return pair_set;
+	}
+
+	/** Adds every entry of another dictionary to this dictionary. If a key is
+	  * in both dictionaries, its value becomes combiner.apply(this value,
+	  * other value).
+	  */
+	public void mergeAll(Dictionary<String, Integer> other, final BinaryOperator<Integer> combiner) {
+		other.forEachEntry(new BiConsumer<String, Integer>() {
+			public void accept(String key, Integer value) {
+				int index = find(key, key.hashCode());
+				if (index < 0) {
+					addTo(key, value);
+				} else {
+					counts[index] = combiner.apply(counts[index], value);
+				}
+			}
+		});
+	}
+
+	/** Passes every key and its count to action without creating any objects
+	  * other than the boxed counts (counts up to 127 are cached by Integer.valueOf).
+	  */
+	public void forEachEntry(BiConsumer<? super String, ? super Integer> action) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				action.accept(keys[i], counts[i]);
+			}
+		}
+	}
+
+	/** Passes every word and its count to action without creating any objects. */
+	public void forEachCount(ObjIntConsumer<? super String> action) {
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				action.accept(keys[i], counts[i]);
+			}
+		}
+	}
+
+	/** Gets the number of times the table has grown since it was created. */
+	public int getResizeCount() {
+		return resize_count;
+	}
+
+	/** Gets the total time spent growing the table, in nanoseconds. */
+	public long getResizeNanos() {
+		return resize_nanos;
+	}
+
+	/** Gets the number of entries found on each probe, from each entry's distance to
+	  * its home slot.
+	  */
+	public long[] getProbeHistogram() {
+		long[] histogram = new long[HashStatistics.HISTOGRAM_SIZE];
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				int probes = ((i - homeSlot(hashes[i])) & mask) + 1;
+				histogram[Math.min(probes, histogram.length - 1)]++;
+			}
+		}
+		return histogram;
+	}
+
+	/** Gets the size of this dictionary. */
+	public int size() {
+		return num_entries;
+	}
+
+	/** Sees whether this dictionary is empty. */
+	public boolean isEmpty() {
+		return num_entries == 0;
+	}
+
+	/** Removes all entries from this dictionary. */
+	public void clear() {
+		Arrays.fill(keys, null);
+		Arrays.fill(counts, 0);
+		num_entries = 0;
+	}
+}
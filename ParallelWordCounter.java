@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+/**
+  * ParallelWordCounter
+  * Counts the words of a file on a ForkJoinPool. The file is split into byte ranges
+  * that are counted by MappedWordCounter, which gives every word to the range it
+  * begins in, so the ranges meet at word boundaries and no word is counted twice.
+  * Each leaf task counts into its own dictionary and the partial dictionaries are
+  * merged with Dictionary.mergeAll as the tasks join. The result is the same as
+  * counting the whole file on one thread.
+  */
+
+public class ParallelWordCounter {
+	/** Ranges smaller than this are never split further. */
+	private static final long MIN_RANGE_SIZE = 1024 * 1024;
+	/** Number of leaf ranges per worker, so faster workers can steal the rest. */
+	private static final int RANGES_PER_WORKER = 4;
+	private static final BinaryOperator<Integer> SUM = new BinaryOperator<Integer>() {
+		public Integer apply(Integer a, Integer b) {
+			return a + b;
+		}
+	};
+
+	private int workers;
+	private long token_count;
+
+	public ParallelWordCounter(int workers) {
+		if (workers <= 0) {
+			throw new IllegalArgumentException("workers must be positive: " + workers);
+		}
+		this.workers = workers;
+		token_count = 0;
+	}
+
+	/** Counts of one range of the file. */
+	private static class PartialCount {
+		private Dictionary<String, Integer> words;
+		private long tokens;
+
+		public PartialCount(Dictionary<String, Integer> words, long tokens) {
+			this.words = words;
+			this.tokens = tokens;
+		}
+	}
+
+	/** Counts one range, splitting it in half while it is larger than range_size. */
+	private static class CountTask extends RecursiveTask<PartialCount> {
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel channel;
+		private long start;
+		private long end;
+		private long range_size;
+
+		public CountTask(FileChannel channel, long start, long end, long range_size) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.range_size = range_size;
+		}
+
+		protected PartialCount compute() {
+			if (end - start <= range_size) {
+				MappedWordCounter counter = new MappedWordCounter();
+				try {
+					long tokens = counter.count(channel, start, end);
+					return new PartialCount(counter.toDictionary(), tokens);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+			long middle = start + (end - start) / 2;
+			CountTask left = new CountTask(channel, start, middle, range_size);
+			CountTask right = new CountTask(channel, middle, end, range_size);
+			left.fork();
+			PartialCount right_count = right.compute();
+			PartialCount left_count = left.join();
+
+			/** Merges the smaller dictionary into the larger one. */
+			if (left_count.words.size() < right_count.words.size()) {
+				PartialCount tmp = left_count;
+				left_count = right_count;
+				right_count = tmp;
+			}
+			left_count.words.mergeAll(right_count.words, SUM);
+			left_count.tokens += right_count.tokens;
+			return left_count;
+		}
+	}
+
+	/** Counts every word of the file and returns each distinct word and its count. */
+	public Dictionary<String, Integer> countFile(FileChannel channel) throws IOException {
+		long file_size = channel.size();
+		long range_size = Math.max(MIN_RANGE_SIZE, file_size / ((long) workers * RANGES_PER_WORKER));
+		ForkJoinPool pool = new ForkJoinPool(workers);
+		try {
+			PartialCount total = pool.invoke(new CountTask(channel, 0, file_size, range_size));
+			token_count += total.tokens;
+			return total.words;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/** Gets the total number of words counted so far. */
+	public long getTokenCount() {
+		return token_count;
+	}
+}
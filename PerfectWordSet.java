@@ -0,0 +1,306 @@
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+  * PerfectWordSet
+  * A fixed set of words compiled into a minimal perfect hash, so that membership of a
+  * tokenizer's char slice costs one hash of the word, two array reads and one
+  * comparison, with no probing and no String. The words are split into buckets of
+  * about BUCKET_SIZE by the low half of their hash, and each bucket is given a
+  * displacement that sends its words to slots no other bucket uses, in a table with
+  * a tenth more slots than words (hash and displace, as in PTHash). The spare slots
+  * keep the last buckets placed from needing a search as long as the set. A word's
+  * slot is the high half of its hash XORed with its bucket's hashed displacement,
+  * which is stored already hashed so that a lookup mixes bits only once. Each slot
+  * keeps its word's 64-bit hash, so a word outside the set is almost always turned
+  * away without looking at its characters, and a bitset of the word lengths in the
+  * set turns most of them away before hashing.
+  *
+  * The set cannot be changed once built and is safe to share between threads.
+  */
+
+public class PerfectWordSet {
+	/** Average number of words in a bucket. Larger buckets make the displacement
+	  * array smaller but take longer to place.
+	  */
+	private static final int BUCKET_SIZE = 4;
+	/** Words per slot. */
+	private static final double LOAD_FACTOR = 0.9;
+	/** Displacements tried for one bucket before the build starts over with a new seed. */
+	private static final int MAX_DISPLACEMENT = 1 << 20;
+	/** Lengths at or above this share the last bit of the length bitset. */
+	private static final int LONG_WORD = 63;
+
+	private long seed;
+	private int num_words;
+	/** The word in each slot, or null for a spare slot. */
+	private char[][] words;
+	private long[] slot_hashes;
+	/** Each bucket's displacement, hashed. */
+	private long[] pilots;
+	private long lengths;
+
+	/** Compiles the distinct words of the array, which must not contain null. */
+	public PerfectWordSet(String[] word_list) {
+		SymbolTable symbols = new SymbolTable(word_list.length);
+		for (int i = 0; i < word_list.length; i++) {
+			symbols.intern(word_list[i]);
+		}
+		build(symbols);
+	}
+
+	private PerfectWordSet(SymbolTable symbols) {
+		build(symbols);
+	}
+
+	/** Reads a word list, split into words by the same rules as the text it filters,
+	  * so a listed "Don't" matches the words "don" and "t" of the text. unicode must
+	  * match the mode of the tokenizer the set will filter.
+	  * @throws IOException if the file cannot be read.
+	  */
+	public static PerfectWordSet load(String path, boolean unicode) throws IOException {
+		final SymbolTable symbols = new SymbolTable();
+		Reader reader = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8);
+		try {
+			new Tokenizer(null, unicode).tokenize(reader, new TokenConsumer() {
+				public void accept(char[] chars, int start, int length) {
+					symbols.intern(chars, start, length);
+				}
+			});
+		} finally {
+			reader.close();
+		}
+		return new PerfectWordSet(symbols);
+	}
+
+	/** FNV-1a over the characters, started from the seed and then mixed, since the
+	  * top bits of FNV barely change between short words.
+	  */
+	private static long hash(long seed, char[] chars, int start, int length) {
+		long hash = 0xCBF29CE484222325L ^ seed;
+		for (int i = start; i < start + length; i++) {
+			hash = (hash ^ chars[i]) * 0x100000001B3L;
+		}
+		return mix(hash);
+	}
+
+	/** The 64-bit finalizer of MurmurHash3. */
+	private static long mix(long x) {
+		x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+		x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return x ^ (x >>> 33);
+	}
+
+	/** Hashes a displacement so that each one moves a bucket's words to unrelated slots. */
+	private static long pilot(long displacement) {
+		return mix(displacement * 0x9E3779B97F4A7C15L + 1);
+	}
+
+	/** Maps the top 32 bits of a hash onto [0, range) without a division. */
+	private static int reduce(long hash, int range) {
+		return (int) (((hash >>> 32) * range) >>> 32);
+	}
+
+	private static int bucketOf(long hash, int buckets) {
+		return reduce(hash << 32, buckets);
+	}
+
+	private static int slotOf(long hash, long pilot, int size) {
+		return reduce(hash ^ pilot, size);
+	}
+
+	private static long lengthBit(int length) {
+		return 1L << Math.min(length, LONG_WORD);
+	}
+
+	/** Builds the table, trying new seeds until every bucket can be placed. */
+	private void build(SymbolTable symbols) {
+		int size = symbols.size();
+		num_words = size;
+		char[][] keys = new char[size][];
+		lengths = 0;
+		for (int i = 0; i < size; i++) {
+			keys[i] = symbols.getWord(i).toCharArray();
+			lengths |= lengthBit(keys[i].length);
+		}
+		seed = 0;
+		while (!tryBuild(keys)) {
+			seed++;
+		}
+	}
+
+	/** Places every bucket, largest first, at the smallest displacement whose slots
+	  * are all free.
+	  * @return false if some bucket could not be placed with this seed.
+	  */
+	private boolean tryBuild(char[][] keys) {
+		int size = keys.length;
+		int num_slots = size == 0 ? 0 : (int) Math.ceil(size / LOAD_FACTOR);
+		int buckets = Math.max(1, (size + BUCKET_SIZE - 1) / BUCKET_SIZE);
+		long[] hashes = new long[size];
+		int[] bucket_starts = new int[buckets + 1];
+		for (int i = 0; i < size; i++) {
+			hashes[i] = hash(seed, keys[i], 0, keys[i].length);
+			bucket_starts[bucketOf(hashes[i], buckets) + 1]++;
+		}
+		/** Sorts the keys by bucket, then the buckets by size, both by counting. */
+		int largest = 0;
+		for (int b = 0; b < buckets; b++) {
+			largest = Math.max(largest, bucket_starts[b + 1]);
+			bucket_starts[b + 1] += bucket_starts[b];
+		}
+		int[] members = new int[size];
+		int[] filled = new int[buckets];
+		for (int i = 0; i < size; i++) {
+			int b = bucketOf(hashes[i], buckets);
+			members[bucket_starts[b] + filled[b]++] = i;
+		}
+		int[] size_starts = new int[largest + 2];
+		for (int b = 0; b < buckets; b++) {
+			size_starts[largest - filled[b] + 1]++;
+		}
+		for (int s = 0; s <= largest; s++) {
+			size_starts[s + 1] += size_starts[s];
+		}
+		int[] order = new int[buckets];
+		for (int b = 0; b < buckets; b++) {
+			order[size_starts[largest - filled[b]]++] = b;
+		}
+
+		boolean[] taken = new boolean[num_slots];
+		int[] slots = new int[largest];
+		long[] placed = new long[buckets];
+		for (int o = 0; o < buckets && filled[order[o]] > 0; o++) {
+			int b = order[o];
+			int first = bucket_starts[b];
+			int count = filled[b];
+			long displacement = 0;
+			while (!fits(hashes, members, first, count, pilot(displacement), taken, slots)) {
+				if (++displacement == MAX_DISPLACEMENT) {
+					return false;
+				}
+			}
+			for (int m = 0; m < count; m++) {
+				taken[slots[m]] = true;
+			}
+			placed[b] = pilot(displacement);
+		}
+
+		words = new char[num_slots][];
+		slot_hashes = new long[num_slots];
+		for (int i = 0; i < size; i++) {
+			int slot = slotOf(hashes[i], placed[bucketOf(hashes[i], buckets)], num_slots);
+			words[slot] = keys[i];
+			slot_hashes[slot] = hashes[i];
+		}
+		pilots = placed;
+		return true;
+	}
+
+	/** Returns true if the pilot sends every key of a bucket to a free slot of its own,
+	  * leaving those slots in slots.
+	  */
+	private static boolean fits(long[] hashes, int[] members, int first, int count, long pilot,
+	boolean[] taken, int[] slots) {
+		for (int m = 0; m < count; m++) {
+			int slot = slotOf(hashes[members[first + m]], pilot, taken.length);
+			if (taken[slot]) {
+				return false;
+			}
+			for (int earlier = 0; earlier < m; earlier++) {
+				if (slots[earlier] == slot) {
+					return false;
+				}
+			}
+			slots[m] = slot;
+		}
+		return true;
+	}
+
+	/** Returns true if the word in the slice is in the set. */
+	public boolean contains(char[] chars, int start, int length) {
+		if ((lengths & lengthBit(length)) == 0) {
+			return false;
+		}
+		long hash = hash(seed, chars, start, length);
+		int slot = slotOf(hash, pilots[bucketOf(hash, pilots.length)], words.length);
+		if (slot_hashes[slot] != hash) {
+			return false;
+		}
+		char[] word = words[slot];
+		if (word == null || word.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (word[i] != chars[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean contains(String word) {
+		return contains(word.toCharArray(), 0, word.length());
+	}
+
+	/** Gets the number of words in the set. */
+	public int size() {
+		return num_words;
+	}
+
+	/** Checks that a set built from random words holds exactly those words. */
+	public static void main(String[] args) {
+		Random random = new Random(7);
+		int bad = 0;
+		for (int trial = 0; trial < 50; trial++) {
+			int count = trial == 0 ? 0 : random.nextInt(trial < 40 ? 600 : 200000);
+			String[] listed = new String[count];
+			for (int i = 0; i < count; i++) {
+				listed[i] = trial % 2 == 0 ? randomWord(random) : countingWord(i);
+			}
+			PerfectWordSet set = new PerfectWordSet(listed);
+			SymbolTable expected = new SymbolTable();
+			for (int i = 0; i < count; i++) {
+				expected.intern(listed[i]);
+			}
+			if (set.size() != expected.size()) {
+				bad++;
+			}
+			for (int i = 0; i < count; i++) {
+				if (!set.contains(listed[i])) {
+					bad++;
+				}
+			}
+			for (int i = 0; i < 10000; i++) {
+				String word = randomWord(random);
+				if (set.contains(word) != (expected.find(word) >= 0)) {
+					bad++;
+				}
+			}
+		}
+		System.out.println(bad);
+	}
+
+	/** Returns the words b, c, ..., z, ab, bb, ..., which differ in very few bits. */
+	private static String countingWord(int i) {
+		StringBuilder word = new StringBuilder();
+		i++;
+		while (i > 0) {
+			word.append((char) ('a' + i % 26));
+			i /= 26;
+		}
+		return word.toString();
+	}
+
+	private static String randomWord(Random random) {
+		char[] word = new char[1 + random.nextInt(random.nextInt(8) == 0 ? 70 : 6)];
+		for (int i = 0; i < word.length; i++) {
+			word[i] = (char) ('a' + random.nextInt(26));
+		}
+		return new String(word);
+	}
+}
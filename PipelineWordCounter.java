@@ -0,0 +1,381 @@
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+/**
+  * PipelineWordCounter
+  * Counts words in three stages that run at the same time, so reading overlaps
+  * counting instead of alternating with it:
+  *   readers    decode each input into chunks of text that end between words,
+  *   tokenizers split chunks into words and sort them into one batch per shard,
+  *   counters   each own a shard of the vocabulary and count its batches.
+  * The stages are connected by bounded queues, so a slow stage blocks the stage
+  * before it and memory stays bounded by the queue sizes whatever the input size.
+  * Words pass between stages in batches, so a queue operation is shared by
+  * hundreds of words.
+  *
+  * Readers spend their time blocked on I/O, so each input gets its own virtual
+  * thread where the JVM has them (Java 21 and later) and a platform thread
+  * otherwise. Tokenizers and counters run on a fixed pool. Every word of a shard is
+  * counted by the same thread, so the shards' tables need no locking and have no
+  * keys in common. A WordFilter, if given, drops words in the tokenizers, before
+  * they are batched. Chunks are only cut at whitespace, apostrophes and hyphens,
+  * which end words in both the ASCII and the Unicode mode of Tokenizer.
+  */
+
+public class PipelineWordCounter {
+	/** Characters read into one chunk, unless a word is longer. */
+	private static final int CHUNK_SIZE = 64 * 1024;
+	/** Words in a full batch. */
+	private static final int BATCH_WORDS = 2048;
+	/** Chunks or batches that may wait in a queue per thread taking from it. */
+	private static final int QUEUE_DEPTH = 4;
+	/** Marks the end of a queue's input. Compared by identity. */
+	private static final char[] END_OF_CHUNKS = new char[0];
+	private static final TokenBatch END_OF_BATCHES = new TokenBatch();
+	private static final BinaryOperator<Integer> SUM = new BinaryOperator<Integer>() {
+		public Integer apply(Integer a, Integer b) {
+			return a + b;
+		}
+	};
+
+	private int tokenizers;
+	private int shards;
+	private WordFilter filter;
+	private boolean unicode;
+	private long token_count;
+	private long kept_count;
+	private long char_count;
+
+	public PipelineWordCounter(int tokenizers, int shards) {
+		this(tokenizers, shards, null, false);
+	}
+
+	/** Creates a counter that counts only the words the filter keeps, or every word if
+	  * the filter is null, tokenized in Unicode mode if unicode is true.
+	  */
+	public PipelineWordCounter(int tokenizers, int shards, WordFilter filter, boolean unicode) {
+		if (tokenizers <= 0 || shards <= 0) {
+			throw new IllegalArgumentException("tokenizers and shards must be positive: "
+			+ tokenizers + ", " + shards);
+		}
+		this.tokenizers = tokenizers;
+		this.shards = shards;
+		this.filter = filter;
+		this.unicode = unicode;
+		token_count = 0;
+		kept_count = 0;
+		char_count = 0;
+	}
+
+	/** Words of one shard, packed end to end into one array. */
+	private static class TokenBatch {
+		private char[] chars;
+		private int[] ends;
+		private int num_words;
+
+		public TokenBatch() {
+			chars = new char[BATCH_WORDS * 8];
+			ends = new int[BATCH_WORDS];
+			num_words = 0;
+		}
+
+		public void add(char[] word, int start, int length) {
+			int offset = num_words == 0 ? 0 : ends[num_words - 1];
+			if (offset + length > chars.length) {
+				char[] bigger = new char[Math.max(chars.length * 2, offset + length)];
+				System.arraycopy(chars, 0, bigger, 0, offset);
+				chars = bigger;
+			}
+			System.arraycopy(word, start, chars, offset, length);
+			ends[num_words++] = offset + length;
+		}
+
+		public boolean isFull() {
+			return num_words == ends.length;
+		}
+	}
+
+	/** Text of one chunk, ending between words. */
+	private static class Chunk {
+		private char[] chars;
+		private int length;
+
+		public Chunk(char[] chars, int length) {
+			this.chars = chars;
+			this.length = length;
+		}
+	}
+
+	/** Returns an executor that runs each task on a new virtual thread, or on a new
+	  * platform thread where virtual threads are not available. Found by reflection
+	  * so the code still builds and runs on Java 17.
+	  */
+	private static ExecutorService newThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/** Returns true if c ends a word, by the same rule as Tokenizer. */
+	private static boolean isSeparator(char c) {
+		return c == '\'' || c == '-' || Character.isWhitespace(c);
+	}
+
+	private static int shardOf(char[] chars, int start, int length, int shards) {
+		int hash = SymbolTable.hash(chars, start, length);
+		hash ^= hash >>> 16;
+		return (hash & 0x7FFFFFFF) % shards;
+	}
+
+	/** Counts every word of the UTF-8 inputs, each read on its own thread, and closes
+	  * them.
+	  * @return The table of all the words, merged from the shards.
+	  * @throws IOException if an input cannot be read.
+	  */
+	public CounterDictionary count(InputStream[] inputs) throws IOException {
+		final BlockingQueue<Object> chunks = new ArrayBlockingQueue<Object>(QUEUE_DEPTH * tokenizers);
+		final ArrayList<BlockingQueue<TokenBatch>> batches = new ArrayList<BlockingQueue<TokenBatch>>();
+		for (int i = 0; i < shards; i++) {
+			batches.add(new ArrayBlockingQueue<TokenBatch>(QUEUE_DEPTH * tokenizers));
+		}
+		final ExecutorService io_pool = newThreadPerTaskExecutor();
+		final ExecutorService cpu_pool = Executors.newFixedThreadPool(tokenizers + shards);
+		final AtomicInteger readers_left = new AtomicInteger(inputs.length);
+		ArrayList<Future<Long>> readers = new ArrayList<Future<Long>>();
+		ArrayList<Future<long[]>> tokenizer_tasks = new ArrayList<Future<long[]>>();
+		ArrayList<Future<SymbolCounter>> counters = new ArrayList<Future<SymbolCounter>>();
+		try {
+			for (int i = 0; i < shards; i++) {
+				final BlockingQueue<TokenBatch> shard = batches.get(i);
+				counters.add(cpu_pool.submit(new Callable<SymbolCounter>() {
+					public SymbolCounter call() throws InterruptedException {
+						try {
+							return countShard(shard);
+						} catch (RuntimeException e) {
+							stop(io_pool, cpu_pool);
+							throw e;
+						}
+					}
+				}));
+			}
+			for (int i = 0; i < tokenizers; i++) {
+				tokenizer_tasks.add(cpu_pool.submit(new Callable<long[]>() {
+					public long[] call() throws IOException, InterruptedException {
+						try {
+							return tokenizeChunks(chunks, batches);
+						} catch (RuntimeException e) {
+							stop(io_pool, cpu_pool);
+							throw e;
+						}
+					}
+				}));
+			}
+			for (int i = 0; i < inputs.length; i++) {
+				final InputStream input = inputs[i];
+				readers.add(io_pool.submit(new Callable<Long>() {
+					public Long call() throws IOException, InterruptedException {
+						try {
+							return readChunks(new InputStreamReader(input, StandardCharsets.UTF_8), chunks);
+						} finally {
+							input.close();
+							/** The last reader to finish tells every tokenizer to stop. */
+							if (readers_left.decrementAndGet() == 0) {
+								for (int t = 0; t < tokenizers; t++) {
+									chunks.put(END_OF_CHUNKS);
+								}
+							}
+						}
+					}
+				}));
+			}
+
+			/** Waits for each stage in order. A failed stage stops the pipeline, since the
+			  * stages around it would otherwise wait on its queues forever. The readers
+			  * are waited on first, so a later stage that fails stops itself.
+			  */
+			for (int i = 0; i < readers.size(); i++) {
+				char_count += await(readers.get(i), io_pool, cpu_pool);
+			}
+			for (int i = 0; i < tokenizer_tasks.size(); i++) {
+				long[] found = await(tokenizer_tasks.get(i), io_pool, cpu_pool);
+				token_count += found[0];
+				kept_count += found[1];
+			}
+			CounterDictionary total = null;
+			for (int i = 0; i < counters.size(); i++) {
+				SymbolCounter shard = await(counters.get(i), io_pool, cpu_pool);
+				/** Shards have no words in common, so the smaller is added to the larger. */
+				if (total == null) {
+					total = shard;
+				} else if (total.size() < shard.size()) {
+					shard.mergeAll(total, SUM);
+					total = shard;
+				} else {
+					total.mergeAll(shard, SUM);
+				}
+			}
+			return total;
+		} finally {
+			stop(io_pool, cpu_pool);
+		}
+	}
+
+	/** Interrupts every stage, which makes the ones waiting on a queue fail. */
+	private static void stop(ExecutorService io_pool, ExecutorService cpu_pool) {
+		io_pool.shutdownNow();
+		cpu_pool.shutdownNow();
+	}
+
+	/** Gets the result of a stage, stopping both pools if it failed. */
+	private static <T> T await(Future<T> task, ExecutorService io_pool, ExecutorService cpu_pool)
+	throws IOException {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while counting");
+		} catch (ExecutionException e) {
+			stop(io_pool, cpu_pool);
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/** Reads an input into chunks that end just after a separator, carrying the
+	  * unfinished word at the end of each read into the next chunk.
+	  * @return The number of characters read.
+	  */
+	private static long readChunks(Reader reader, BlockingQueue<Object> chunks)
+	throws IOException, InterruptedException {
+		long read_chars = 0;
+		char[] buffer = new char[CHUNK_SIZE];
+		int filled = 0;
+		int read = reader.read(buffer, filled, buffer.length - filled);
+		while (read != -1) {
+			read_chars += read;
+			filled += read;
+			int cut = filled;
+			while (cut > 0 && !isSeparator(buffer[cut - 1])) {
+				cut--;
+			}
+			if (cut == 0 && filled == buffer.length) {
+				/** No separator in a full buffer: one word fills it, so it grows. */
+				char[] bigger = new char[buffer.length * 2];
+				System.arraycopy(buffer, 0, bigger, 0, filled);
+				buffer = bigger;
+			} else if (cut > 0) {
+				char[] next = new char[Math.max(CHUNK_SIZE, filled - cut + 1)];
+				System.arraycopy(buffer, cut, next, 0, filled - cut);
+				chunks.put(new Chunk(buffer, cut));
+				buffer = next;
+				filled -= cut;
+			}
+			read = reader.read(buffer, filled, buffer.length - filled);
+		}
+		if (filled > 0) {
+			chunks.put(new Chunk(buffer, filled));
+		}
+		return read_chars;
+	}
+
+	/** Tokenizes chunks until told to stop, sending each shard's words in batches.
+	  * @return The number of words found and the number kept by the filter.
+	  */
+	private long[] tokenizeChunks(BlockingQueue<Object> chunks, final ArrayList<BlockingQueue<TokenBatch>> batches)
+	throws IOException, InterruptedException {
+		final TokenBatch[] pending = new TokenBatch[shards];
+		for (int i = 0; i < shards; i++) {
+			pending[i] = new TokenBatch();
+		}
+		/** A batch that fills mid-chunk is queued by the consumer, which cannot throw
+		  * InterruptedException, so the interrupt is carried out to here.
+		  */
+		final InterruptedException[] interrupted = new InterruptedException[1];
+		TokenConsumer sorter = new TokenConsumer() {
+			public void accept(char[] chars, int start, int length) {
+				int shard = shardOf(chars, start, length, shards);
+				TokenBatch batch = pending[shard];
+				batch.add(chars, start, length);
+				if (batch.isFull() && interrupted[0] == null) {
+					try {
+						batches.get(shard).put(batch);
+					} catch (InterruptedException e) {
+						interrupted[0] = e;
+					}
+					pending[shard] = new TokenBatch();
+				}
+			}
+		};
+		Tokenizer tokenizer = new Tokenizer(CHUNK_SIZE, filter, unicode);
+		Object next = chunks.take();
+		while (next != END_OF_CHUNKS) {
+			Chunk chunk = (Chunk) next;
+			tokenizer.tokenize(new CharArrayReader(chunk.chars, 0, chunk.length), sorter);
+			if (interrupted[0] != null) {
+				throw interrupted[0];
+			}
+			next = chunks.take();
+		}
+		for (int i = 0; i < shards; i++) {
+			if (pending[i].num_words > 0) {
+				batches.get(i).put(pending[i]);
+			}
+			batches.get(i).put(END_OF_BATCHES);
+		}
+		return new long[] {tokenizer.getTokenCount(), tokenizer.getKeptCount()};
+	}
+
+	/** Counts one shard's batches until every tokenizer has finished. */
+	private SymbolCounter countShard(BlockingQueue<TokenBatch> shard) throws InterruptedException {
+		SymbolCounter counts = new SymbolCounter();
+		int running = tokenizers;
+		while (running > 0) {
+			TokenBatch batch = shard.take();
+			if (batch == END_OF_BATCHES) {
+				running--;
+				continue;
+			}
+			int start = 0;
+			for (int i = 0; i < batch.num_words; i++) {
+				counts.accept(batch.chars, start, batch.ends[i] - start);
+				start = batch.ends[i];
+			}
+		}
+		return counts;
+	}
+
+	/** Gets the total number of words found so far, kept or not. */
+	public long getTokenCount() {
+		return token_count;
+	}
+
+	/** Gets the total number of words counted so far, which are those the filter kept. */
+	public long getKeptCount() {
+		return kept_count;
+	}
+
+	/** Gets the total number of characters read so far. */
+	public long getCharCount() {
+		return char_count;
+	}
+}
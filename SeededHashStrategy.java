@@ -0,0 +1,62 @@
+/**
+  * SeededHashStrategy
+  * A seeded Murmur3-style HashStrategy. Keys that are CharSequences (such as Strings)
+  * are hashed from their characters, two at a time, so the result does not depend on
+  * String.hashCode; other keys have their hashCode() mixed with the seed. Every bit of
+  * the result depends on every bit of the input, which keeps chains short for skewed
+  * vocabularies such as hex IDs and makes power-of-two masking safe to use. Choosing a
+  * random seed per run makes collisions hard to construct on purpose.
+  */
+
+public class SeededHashStrategy implements HashStrategy {
+	private static final int C1 = 0xcc9e2d51;
+	private static final int C2 = 0x1b873593;
+
+	private int seed;
+
+	public SeededHashStrategy(int seed) {
+		this.seed = seed;
+	}
+
+	public int hash(Object key) {
+		if (!(key instanceof CharSequence)) {
+			return finish(mixBlock(seed, key.hashCode()), 4);
+		}
+		CharSequence chars = (CharSequence) key;
+		int length = chars.length();
+		int hash = seed;
+		int i = 0;
+		while (i + 1 < length) {
+			hash = mixBlock(hash, chars.charAt(i) | (chars.charAt(i + 1) << 16));
+			i += 2;
+		}
+		if (i < length) {
+			/** Mixes the last odd character without the rotate and multiply of a full block. */
+			int block = chars.charAt(i) * C1;
+			block = Integer.rotateLeft(block, 15) * C2;
+			hash ^= block;
+		}
+		return finish(hash, 2 * length);
+	}
+
+	/** Mixes one 32-bit block into the running hash. */
+	private static int mixBlock(int hash, int block) {
+		block *= C1;
+		block = Integer.rotateLeft(block, 15);
+		block *= C2;
+		hash ^= block;
+		hash = Integer.rotateLeft(hash, 13);
+		return hash * 5 + 0xe6546b64;
+	}
+
+	/** Folds in the input length and avalanches the bits of the result. */
+	private static int finish(int hash, int length) {
+		hash ^= length;
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+}
@@ -0,0 +1,321 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+  * ShardedWordCounter
+  * Counts words in separate worker processes, so the vocabulary is split across as
+  * many heaps as there are shards and no process ever holds all of it. The calling
+  * process tokenizes the input and sends every word to the shard its hash picks. Each
+  * worker counts the words of its shard and saves them as a FrequencyIndex shard file.
+  * The shards have no words in common, so the top K of the whole input is found by
+  * reading the shard files one after another, entry by entry, into one TopKSelector.
+  *
+  * The protocol is plain streams and files: a worker reads its words from standard
+  * input, one per line in UTF-8, and writes its shard file under a temporary name
+  * that it renames once the file is complete. The same worker could read from a
+  * socket on another machine, with the shard files collected afterwards:
+  *     java ShardedWordCounter shard-index < words
+  *
+  * Workers run the same Java with the same class path as the calling process, but
+  * none of its JVM options: a debugger agent would make every worker bind the same
+  * port, and the caller's heap limit is sized for one process, not N. The only
+  * option a worker gets is its own heap limit, if one is given. Words are sent
+  * through buffered pipes, so a slow worker blocks the tokenizer rather than letting
+  * words pile up in memory.
+  */
+
+public class ShardedWordCounter {
+	/** Characters buffered per shard before they are written to its worker. */
+	private static final int SEND_BUFFER_SIZE = 64 * 1024;
+	private static final int READ_BUFFER_SIZE = 64 * 1024;
+	/** Added to a shard file's name while its worker is still writing it. */
+	private static final String PARTIAL_SUFFIX = ".partial";
+
+	private int shards;
+	private File directory;
+	private WordFilter filter;
+	private boolean unicode;
+	private int worker_megabytes;
+	private String[] shard_paths;
+	private long token_count;
+	private long kept_count;
+
+	/** Creates a counter that writes its shard files to directory, dropping the words
+	  * the filter rejects if it is not null and tokenizing in Unicode mode if unicode
+	  * is true. Workers use the JVM's default heap limit.
+	  */
+	public ShardedWordCounter(int shards, File directory, WordFilter filter, boolean unicode) {
+		this(shards, directory, filter, unicode, 0);
+	}
+
+	/** Creates a counter whose workers may each use at most worker_megabytes of heap,
+	  * or the JVM's default if worker_megabytes is 0.
+	  */
+	public ShardedWordCounter(int shards, File directory, WordFilter filter, boolean unicode,
+	int worker_megabytes) {
+		if (shards <= 0) {
+			throw new IllegalArgumentException("shards must be positive: " + shards);
+		}
+		if (worker_megabytes < 0) {
+			throw new IllegalArgumentException("worker_megabytes must not be negative: " + worker_megabytes);
+		}
+		this.shards = shards;
+		this.directory = directory;
+		this.filter = filter;
+		this.unicode = unicode;
+		this.worker_megabytes = worker_megabytes;
+		shard_paths = new String[shards];
+		for (int i = 0; i < shards; i++) {
+			shard_paths[i] = new File(directory, String.format("shard-%04d.idx", i)).getPath();
+		}
+		token_count = 0;
+		kept_count = 0;
+	}
+
+	/** Picks a word's shard from the high bits of its hash times the golden ratio. The
+	  * workers' symbol tables place words by the low bits of the same hash, so a shard
+	  * taken from the low bits would leave most of each worker's slots unused.
+	  */
+	private static int shardOf(char[] chars, int start, int length, int shards) {
+		long hash = (SymbolTable.hash(chars, start, length) * 0x9E3779B9) & 0xFFFFFFFFL;
+		return (int) ((hash * shards) >>> 32);
+	}
+
+	/** Tokenizes the inputs, in order, and counts their words in the worker processes,
+	  * closing the inputs. The shard files are complete when this returns.
+	  * @throws IOException if an input cannot be read or a worker fails.
+	  */
+	public void count(InputStream[] inputs) throws IOException {
+		final Process[] workers = new Process[shards];
+		final Writer[] senders = new Writer[shards];
+		boolean finished = false;
+		try {
+			for (int i = 0; i < shards; i++) {
+				workers[i] = startWorker(shard_paths[i]);
+				senders[i] = new BufferedWriter(new OutputStreamWriter(workers[i].getOutputStream(),
+				StandardCharsets.UTF_8), SEND_BUFFER_SIZE);
+			}
+			Tokenizer tokenizer = new Tokenizer(filter, unicode);
+			TokenConsumer router = new TokenConsumer() {
+				public void accept(char[] chars, int start, int length) {
+					int shard = shardOf(chars, start, length, shards);
+					try {
+						senders[shard].write(chars, start, length);
+						senders[shard].write('\n');
+					} catch (IOException e) {
+						throw new ShardFailure(shard, e);
+					}
+				}
+			};
+			for (int i = 0; i < inputs.length; i++) {
+				try {
+					tokenizer.tokenize(new InputStreamReader(inputs[i], StandardCharsets.UTF_8), router);
+				} catch (ShardFailure e) {
+					/** A write fails when the worker has exited, so its status says why. */
+					throw new IOException("Shard worker " + e.shard + " exited with status "
+					+ waitFor(workers[e.shard]), e.getCause());
+				} finally {
+					inputs[i].close();
+				}
+			}
+			for (int i = 0; i < shards; i++) {
+				senders[i].close();
+			}
+			for (int i = 0; i < shards; i++) {
+				int status = waitFor(workers[i]);
+				if (status != 0) {
+					throw new IOException("Shard worker " + i + " exited with status " + status);
+				}
+			}
+			token_count += tokenizer.getTokenCount();
+			kept_count += tokenizer.getKeptCount();
+			finished = true;
+		} finally {
+			if (!finished) {
+				for (int i = 0; i < shards; i++) {
+					if (workers[i] != null) {
+						workers[i].destroyForcibly();
+					}
+				}
+			}
+		}
+	}
+
+	/** Carries a failed write to a worker out of a TokenConsumer, which cannot throw
+	  * IOException.
+	  */
+	private static class ShardFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private int shard;
+
+		private ShardFailure(int shard, IOException cause) {
+			super(cause);
+			this.shard = shard;
+		}
+
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+	/** Starts a worker process that counts the words written to it into a shard file.
+	  * Its errors go to this process's standard error.
+	  */
+	private Process startWorker(String shard_path) throws IOException {
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		if (worker_megabytes > 0) {
+			command.add("-Xmx" + worker_megabytes + "m");
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ShardedWordCounter.class.getName());
+		command.add(shard_path);
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+		builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+		return builder.start();
+	}
+
+	private static int waitFor(Process worker) throws IOException {
+		try {
+			return worker.waitFor();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a shard worker");
+		}
+	}
+
+	/** Returns the top k words of all the shards, ranked like TopKSelector, or every
+	  * word if k is 0. Each shard file is read once, in order, and only words whose
+	  * count could enter the selection are turned into Strings.
+	  * @throws IOException if a shard file cannot be read.
+	  */
+	public ArrayList<DictPair<String, Integer>> top(int k) throws IOException {
+		TopKSelector selector = k == 0 ? new TopKSelector() : new TopKSelector(k);
+		for (int i = 0; i < shards; i++) {
+			FrequencyIndex shard = FrequencyIndex.open(shard_paths[i]);
+			try {
+				FrequencyIndex.Cursor cursor = shard.cursor();
+				while (cursor.next()) {
+					if (selector.accepts(cursor.getCount())) {
+						selector.offer(cursor.getWord(), cursor.getCount());
+					}
+				}
+			} finally {
+				shard.close();
+			}
+		}
+		return selector.result();
+	}
+
+	/** Merges the shard files into one index with n as its word total. */
+	public void save(String path, long n) throws IOException {
+		FrequencyIndex.merge(shard_paths, path, n);
+	}
+
+	/** Deletes the shard files, and any a failed worker left unfinished, and the
+	  * directory if that leaves it empty.
+	  */
+	public void deleteShards() {
+		for (int i = 0; i < shards; i++) {
+			new File(shard_paths[i]).delete();
+			new File(shard_paths[i] + PARTIAL_SUFFIX).delete();
+		}
+		String[] left = directory.list();
+		if (left != null && left.length == 0) {
+			directory.delete();
+		}
+	}
+
+	/** Gets the paths of the shard files. */
+	public String[] getShardPaths() {
+		return Arrays.copyOf(shard_paths, shards);
+	}
+
+	/** Gets the number of words found in the inputs, kept or not. */
+	public long getTokenCount() {
+		return token_count;
+	}
+
+	/** Gets the number of words sent to the shards. */
+	public long getKeptCount() {
+		return kept_count;
+	}
+
+	/** Passes each line of the stream to the consumer as a word, skipping empty lines.
+	  * @return The number of words read.
+	  */
+	private static long readWords(Reader reader, TokenConsumer consumer) throws IOException {
+		char[] buffer = new char[READ_BUFFER_SIZE];
+		long words = 0;
+		int carry = 0;
+		int read = reader.read(buffer, carry, buffer.length - carry);
+		while (read != -1) {
+			int end = carry + read;
+			int word_start = 0;
+			for (int i = carry; i < end; i++) {
+				if (buffer[i] == '\n') {
+					if (i > word_start) {
+						consumer.accept(buffer, word_start, i - word_start);
+						words++;
+					}
+					word_start = i + 1;
+				}
+			}
+			carry = end - word_start;
+			System.arraycopy(buffer, word_start, buffer, 0, carry);
+			if (carry == buffer.length) {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+			read = reader.read(buffer, carry, buffer.length - carry);
+		}
+		if (carry > 0) {
+			consumer.accept(buffer, 0, carry);
+			words++;
+		}
+		return words;
+	}
+
+	/** Counts the words of one shard, read from the stream, and saves them to path.
+	  * The index is written under a temporary name and renamed, so a shard file that
+	  * exists is always complete.
+	  */
+	public static void countShard(InputStream input, String path) throws IOException {
+		SymbolCounter counts = new SymbolCounter();
+		long n = readWords(new InputStreamReader(input, StandardCharsets.UTF_8), counts);
+		Path partial = Paths.get(path + PARTIAL_SUFFIX);
+		FrequencyIndex.save(counts, n, partial.toString());
+		Files.move(partial, Paths.get(path), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/** Runs one shard worker: counts the words on standard input into the index file
+	  * named by the only argument.
+	  */
+	public static void main(String[] args) {
+		if (args.length != 1) {
+			System.err.println("Usage: java ShardedWordCounter index < words");
+			System.exit(1);
+		}
+		try {
+			countShard(System.in, args[0]);
+		} catch (IOException e) {
+			System.err.println("Error writing shard " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * SpaceSaving
+  * Finds the most frequent words of a stream while tracking at most a fixed number of
+  * words (the Space-Saving algorithm of Metwally, Agrawal and El Abbadi). A word that
+  * is tracked has its counter incremented. A word that is not tracked takes over the
+  * counter of the least counted word, inheriting its count as the word's possible error.
+  *
+  * After N words with m counters, every tracked count c with error err satisfies
+  * c - err <= true count <= c, and err <= N / m. Every word that occurs more than
+  * N / m times is tracked. Counters are kept in a min-heap by count, with each word's
+  * heap position stored in a small dictionary, so each word costs O(log m).
+  */
+
+public class SpaceSaving {
+	private int capacity;
+	private String[] heap_words;
+	private int[] heap_counts;
+	private int[] heap_errors;
+	private int heap_size;
+	private long total;
+	/** Heap position + 1 of every tracked word. */
+	private OpenHashCounterDictionary positions;
+
+	public SpaceSaving(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		this.capacity = capacity;
+		heap_words = new String[capacity];
+		heap_counts = new int[capacity];
+		heap_errors = new int[capacity];
+		heap_size = 0;
+		total = 0;
+		positions = OpenHashCounterDictionary.withExpectedSize(capacity);
+	}
+
+	/** Counts one occurrence of a word.
+	  * @return The word's tracked count, an overestimate of its true count.
+	  */
+	public int increment(String word) {
+		return offer(word, 1);
+	}
+
+	/** Counts delta occurrences of a word.
+	  * @return The word's tracked count, an overestimate of its true count.
+	  */
+	public int offer(String word, int delta) {
+		total += delta;
+		int position = positions.getCount(word) - 1;
+		if (position >= 0) {
+			int count = heap_counts[position] + delta;
+			heap_counts[position] = count;
+			siftDown(position);
+			return count;
+		}
+		if (heap_size < capacity) {
+			heap_words[heap_size] = word;
+			heap_counts[heap_size] = delta;
+			heap_errors[heap_size] = 0;
+			positions.add(word, heap_size + 1);
+			heap_size++;
+			siftUp(heap_size - 1);
+			return delta;
+		}
+		/** Replaces the least counted word, whose count becomes the error bound. */
+		int min_count = heap_counts[0];
+		positions.remove(heap_words[0]);
+		heap_words[0] = word;
+		heap_counts[0] = min_count + delta;
+		heap_errors[0] = min_count;
+		positions.add(word, 1);
+		siftDown(0);
+		return min_count + delta;
+	}
+
+	/** Gets the tracked count of a word, or 0 if it is not tracked. A word that is not
+	  * tracked occurs at most getMinCount() times.
+	  */
+	public int getCount(String word) {
+		int position = positions.getCount(word) - 1;
+		return position < 0 ? 0 : heap_counts[position];
+	}
+
+	/** Gets how much the tracked count of a word may exceed its true count. */
+	public int getError(String word) {
+		int position = positions.getCount(word) - 1;
+		return position < 0 ? 0 : heap_errors[position];
+	}
+
+	/** Gets the smallest tracked count, or 0 while some counters are unused. */
+	public int getMinCount() {
+		return heap_size < capacity ? 0 : heap_counts[0];
+	}
+
+	/** Returns the k highest tracked words, ranked by their tracked counts. */
+	public ArrayList<DictPair<String, Integer>> top(int k) {
+		TopKSelector selector = new TopKSelector(k);
+		for (int i = 0; i < heap_size; i++) {
+			selector.offer(heap_words[i], heap_counts[i]);
+		}
+		return selector.result();
+	}
+
+	/** Passes every tracked word and its tracked count to action. */
+	public void forEachCount(ObjIntConsumer<? super String> action) {
+		for (int i = 0; i < heap_size; i++) {
+			action.accept(heap_words[i], heap_counts[i]);
+		}
+	}
+
+	/** Gets the number of words counted, N in the error bound. */
+	public long getTotal() {
+		return total;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/** Gets the number of words currently tracked. */
+	public int size() {
+		return heap_size;
+	}
+
+	/** Puts a counter at a heap position and records the position. */
+	private void place(int index, String word, int count, int error) {
+		heap_words[index] = word;
+		heap_counts[index] = count;
+		heap_errors[index] = error;
+		positions.add(word, index + 1);
+	}
+
+	private void siftUp(int index) {
+		String word = heap_words[index];
+		int count = heap_counts[index];
+		int error = heap_errors[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (heap_counts[parent] <= count) {
+				break;
+			}
+			place(index, heap_words[parent], heap_counts[parent], heap_errors[parent]);
+			index = parent;
+		}
+		place(index, word, count, error);
+	}
+
+	private void siftDown(int index) {
+		String word = heap_words[index];
+		int count = heap_counts[index];
+		int error = heap_errors[index];
+		int half = heap_size / 2;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < heap_size && heap_counts[right] < heap_counts[child]) {
+				child = right;
+			}
+			if (heap_counts[child] >= count) {
+				break;
+			}
+			place(index, heap_words[child], heap_counts[child], heap_errors[child]);
+			index = child;
+		}
+		place(index, word, count, error);
+	}
+}
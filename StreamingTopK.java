@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+
+/**
+  * StreamingTopK
+  * Keeps the K highest ranked words up to date while counts grow one word at a time,
+  * so a ranked snapshot can be taken at any moment in O(K log K) without looking at
+  * the rest of the dictionary. Words are kept in a min-heap ordered like TopKSelector
+  * (count, then word) with each word's heap position stored in a small dictionary.
+  *
+  * Because counts only ever increase, a word outside the heap can only enter it by
+  * overtaking the lowest ranked word at the root, and every word outside the heap
+  * always ranks below every word inside it, so the heap is exactly the top K.
+  */
+
+public class StreamingTopK {
+	private int k;
+	private String[] heap_words;
+	private int[] heap_counts;
+	private int heap_size;
+	/** Heap position + 1 of every word in the heap. */
+	private OpenHashCounterDictionary positions;
+
+	public StreamingTopK(int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+		this.k = k;
+		heap_words = new String[k];
+		heap_counts = new int[k];
+		heap_size = 0;
+		positions = OpenHashCounterDictionary.withExpectedSize(k);
+	}
+
+	/** Returns true if entry (word_a, count_a) ranks below entry (word_b, count_b). */
+	private static boolean ranksBelow(String word_a, int count_a, String word_b, int count_b) {
+		if (count_a != count_b) {
+			return count_a < count_b;
+		}
+		return word_a.compareTo(word_b) > 0;
+	}
+
+	/** Records that a word's count has grown to count. Counts must never decrease. */
+	public void update(String word, int count) {
+		if (heap_size == k && count < heap_counts[0]) {
+			/** Cannot reach the root, so the word is not in the heap and stays out. */
+			return;
+		}
+		int position = positions.getCount(word) - 1;
+		if (position >= 0) {
+			/** The count of a word in the heap grew, so it moves away from the root. */
+			heap_counts[position] = count;
+			siftDown(position);
+		} else if (heap_size < k) {
+			heap_words[heap_size] = word;
+			heap_counts[heap_size] = count;
+			positions.add(word, heap_size + 1);
+			heap_size++;
+			siftUp(heap_size - 1);
+		} else if (ranksBelow(heap_words[0], heap_counts[0], word, count)) {
+			positions.remove(heap_words[0]);
+			heap_words[0] = word;
+			heap_counts[0] = count;
+			positions.add(word, 1);
+			siftDown(0);
+		}
+	}
+
+	/** Returns the current top K from highest to lowest rank. The heap is unchanged. */
+	public ArrayList<DictPair<String, Integer>> snapshot() {
+		TopKSelector selector = new TopKSelector(k);
+		for (int i = 0; i < heap_size; i++) {
+			selector.offer(heap_words[i], heap_counts[i]);
+		}
+		return selector.result();
+	}
+
+	/** Puts an entry at a heap position and records the position. */
+	private void place(int index, String word, int count) {
+		heap_words[index] = word;
+		heap_counts[index] = count;
+		positions.add(word, index + 1);
+	}
+
+	private void siftUp(int index) {
+		String word = heap_words[index];
+		int count = heap_counts[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (!ranksBelow(word, count, heap_words[parent], heap_counts[parent])) {
+				break;
+			}
+			place(index, heap_words[parent], heap_counts[parent]);
+			index = parent;
+		}
+		place(index, word, count);
+	}
+
+	private void siftDown(int index) {
+		String word = heap_words[index];
+		int count = heap_counts[index];
+		int half = heap_size / 2;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < heap_size && ranksBelow(heap_words[right], heap_counts[right],
+					heap_words[child], heap_counts[child])) {
+				child = right;
+			}
+			if (!ranksBelow(heap_words[child], heap_counts[child], word, count)) {
+				break;
+			}
+			place(index, heap_words[child], heap_counts[child]);
+			index = child;
+		}
+		place(index, word, count);
+	}
+}
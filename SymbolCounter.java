@@ -0,0 +1,232 @@
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * SymbolCounter
+  * Counts words by their SymbolTable ID: the count of a word is an int in an array
+  * indexed by its ID. Fed by the Tokenizer, a repeated word costs one probe of the
+  * symbol table and one array increment, with no String created and nothing boxed.
+  * The Dictionary methods look words up through the symbol table; a word whose
+  * count is 0 is not in the dictionary, although it keeps its ID.
+  */
+
+public class SymbolCounter implements CounterDictionary, TokenConsumer, InstrumentedTable {
+	private SymbolTable symbols;
+	private int[] counts;
+	private int num_entries;
+
+	public SymbolCounter() {
+		this(new SymbolTable());
+	}
+
+	/** Creates a counter that can hold the expected number of words without growing. */
+	public SymbolCounter(int expected_words) {
+		this(new SymbolTable(expected_words));
+	}
+
+	/** Creates a counter over a symbol table that may be shared with other counters. */
+	public SymbolCounter(SymbolTable symbols) {
+		this.symbols = symbols;
+		counts = new int[Math.max(16, symbols.size())];
+		num_entries = 0;
+	}
+
+	/** Class that stores the key and value of a specific data entry. */
+	private static class KVPair implements DictPair<String, Integer> {
+		private String key;
+		private Integer value;
+
+		public KVPair(String key_value, Integer data_value) {
+			key = key_value;
+			value = data_value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		public Integer getValue() {
+			return value;
+		}
+	}
+
+	/** Counts one word from the tokenizer. */
+	public void accept(char[] chars, int start, int length) {
+		addToId(symbols.intern(chars, start, length), 1);
+	}
+
+	/** Adds delta to the count of the word with the given ID.
+	  * @return The new count of the word.
+	  */
+	public int addToId(int id, int delta) {
+		if (id >= counts.length) {
+			counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+		}
+		int old_count = counts[id];
+		int count = old_count + delta;
+		counts[id] = count;
+		if (old_count == 0 && count != 0) {
+			num_entries++;
+		} else if (old_count != 0 && count == 0) {
+			num_entries--;
+		}
+		return count;
+	}
+
+	/** Gets the count of the word with the given ID. */
+	public int getCountById(int id) {
+		return id < counts.length ? counts[id] : 0;
+	}
+
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	/** Gets the number of times the symbol table has grown. The count array grows
+	  * with it but is never rehashed.
+	  */
+	public int getResizeCount() {
+		return symbols.getResizeCount();
+	}
+
+	public long getResizeNanos() {
+		return symbols.getResizeNanos();
+	}
+
+	public long[] getProbeHistogram() {
+		return symbols.getProbeHistogram();
+	}
+
+	public int addTo(String key, int delta) {
+		return addToId(symbols.intern(key), delta);
+	}
+
+	public int increment(String key) {
+		return addTo(key, 1);
+	}
+
+	public int getCount(String key) {
+		int id = symbols.find(key);
+		return id < 0 ? 0 : getCountById(id);
+	}
+
+	/** Adds a new entry to this dictionary. If the given key already exists in
+	  * the dictionary, replaces the corresponding value.
+	  * @return Either null if the new entry was added to the dictionary
+	  *         or the value that was associated with key if that value
+	  *         was replaced.
+	  */
+	public Integer add(String key, Integer value) {
+		int id = symbols.intern(key);
+		int old_count = getCountById(id);
+		addToId(id, value - old_count);
+		return old_count == 0 ? null : old_count;
+	}
+
+	/** Removes a specific entry from this dictionary. The word keeps its ID.
+	  * @return Either the value that was associated with the key,
+	  *         or null if the key was not in the dictionary.
+	  */
+	public Integer remove(String key) {
+		int id = symbols.find(key);
+		int old_count = id < 0 ? 0 : getCountById(id);
+		if (old_count == 0) {
+			return null;
+		}
+		addToId(id, -old_count);
+		return old_count;
+	}
+
+	public Integer getValue(String key) {
+		int count = getCount(key);
+		return count == 0 ? null : count;
+	}
+
+	public boolean contains(String key) {
+		return getCount(key) != 0;
+	}
+
+	/** Returns a Set that contains all the keys stored in the dictionary, as their
+	  * IDs. Key sets of counters sharing a symbol table are combined by ID.
+	  */
+	public Set<String> getKeySet() {
+		SymbolSet key_set = new SymbolSet(symbols);
+		int limit = Math.min(counts.length, symbols.size());
+		for (int id = 0; id < limit; id++) {
+			if (counts[id] != 0) {
+				key_set.addId(id);
+			}
+		}
+		return key_set;
+	}
+
+	/** Returns a Set of the key-value pairs stored in the dictionary. */
+	public Set<DictPair<String, Integer>> getEntrySet() {
+		Set<DictPair<String, Integer>> pair_set = new JavaSetWrapper<DictPair<String, Integer>>();
+		int limit = Math.min(counts.length, symbols.size());
+		for (int id = 0; id < limit; id++) {
+			if (counts[id] != 0) {
+				pair_set.add(new KVPair(symbols.getWord(id), counts[id]));
+			}
+		}
+		return pair_set;
+	}
+
+	public void forEachEntry(BiConsumer<? super String, ? super Integer> action) {
+		int limit = Math.min(counts.length, symbols.size());
+		for (int id = 0; id < limit; id++) {
+			if (counts[id] != 0) {
+				action.accept(symbols.getWord(id), counts[id]);
+			}
+		}
+	}
+
+	/** Passes every word and its count to action, in ID order. */
+	public void forEachCount(ObjIntConsumer<? super String> action) {
+		int limit = Math.min(counts.length, symbols.size());
+		for (int id = 0; id < limit; id++) {
+			if (counts[id] != 0) {
+				action.accept(symbols.getWord(id), counts[id]);
+			}
+		}
+	}
+
+	/** Adds every entry of another dictionary to this dictionary. If a key is
+	  * in both dictionaries, its value becomes combiner.apply(this value,
+	  * other value). Counters over the same symbol table are merged by ID.
+	  */
+	public void mergeAll(Dictionary<String, Integer> other, final BinaryOperator<Integer> combiner) {
+		if (other instanceof SymbolCounter && ((SymbolCounter) other).symbols == symbols) {
+			SymbolCounter counter = (SymbolCounter) other;
+			for (int id = 0; id < counter.counts.length; id++) {
+				if (counter.counts[id] != 0) {
+					int count = getCountById(id);
+					addToId(id, (count == 0 ? counter.counts[id] : combiner.apply(count, counter.counts[id])) - count);
+				}
+			}
+			return;
+		}
+		other.forEachEntry(new BiConsumer<String, Integer>() {
+			public void accept(String key, Integer value) {
+				int id = symbols.intern(key);
+				int count = getCountById(id);
+				addToId(id, (count == 0 ? value : combiner.apply(count, value)) - count);
+			}
+		});
+	}
+
+	public int size() {
+		return num_entries;
+	}
+
+	public boolean isEmpty() {
+		return num_entries == 0;
+	}
+
+	/** Removes all entries from this dictionary. The symbol table is unchanged. */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		num_entries = 0;
+	}
+}
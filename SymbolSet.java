@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+  * SymbolSet
+  * A set of words stored as a sorted array of their SymbolTable IDs. Sets over the
+  * same symbol table are combined ID by ID without looking at a single String:
+  * union is a linear merge, and intersect merges sets of similar size but gallops
+  * through the larger set when one is much smaller, so it costs about
+  * small * log(large / small) rather than small + large. A set over a different
+  * table, or any other Set, is combined word by word instead.
+  *
+  * Adding words in increasing ID order, as a counter's key set does, appends in
+  * constant time; adding out of order shifts the array.
+  */
+
+public class SymbolSet implements Set<String> {
+	/** Intersect gallops when the larger set is at least this many times larger. */
+	private static final int GALLOP_RATIO = 16;
+
+	private SymbolTable symbols;
+	private int[] ids;
+	private int num_ids;
+
+	/** Creates an empty set of words from the given symbol table. */
+	public SymbolSet(SymbolTable symbols) {
+		this(symbols, new int[16], 0);
+	}
+
+	/** Creates a set from IDs that are already sorted and distinct. The array is kept. */
+	private SymbolSet(SymbolTable symbols, int[] ids, int num_ids) {
+		this.symbols = symbols;
+		this.ids = ids;
+		this.num_ids = num_ids;
+	}
+
+	/** Gets the symbol table whose IDs this set holds. */
+	public SymbolTable getSymbols() {
+		return symbols;
+	}
+
+	/** Adds the word with the given ID, ignoring duplicates. */
+	public void addId(int id) {
+		if (num_ids > 0 && id > ids[num_ids - 1]) {
+			append(id);
+			return;
+		}
+		int index = Arrays.binarySearch(ids, 0, num_ids, id);
+		if (index >= 0) {
+			return;
+		}
+		index = -index - 1;
+		if (num_ids == ids.length) {
+			ids = Arrays.copyOf(ids, ids.length * 2);
+		}
+		System.arraycopy(ids, index, ids, index + 1, num_ids - index);
+		ids[index] = id;
+		num_ids++;
+	}
+
+	private void append(int id) {
+		if (num_ids == ids.length) {
+			ids = Arrays.copyOf(ids, ids.length * 2);
+		}
+		ids[num_ids++] = id;
+	}
+
+	public boolean containsId(int id) {
+		return Arrays.binarySearch(ids, 0, num_ids, id) >= 0;
+	}
+
+	/** Adds a word, giving it an ID in the symbol table if it has none. */
+	public void add(String item) {
+		addId(symbols.intern(item));
+	}
+
+	public boolean remove(String item) {
+		int id = symbols.find(item);
+		int index = id < 0 ? -1 : Arrays.binarySearch(ids, 0, num_ids, id);
+		if (index < 0) {
+			return false;
+		}
+		System.arraycopy(ids, index + 1, ids, index, num_ids - index - 1);
+		num_ids--;
+		return true;
+	}
+
+	public boolean contains(String item) {
+		int id = symbols.find(item);
+		return id >= 0 && containsId(id);
+	}
+
+	public int size() {
+		return num_ids;
+	}
+
+	public boolean isEmpty() {
+		return num_ids == 0;
+	}
+
+	public void clear() {
+		num_ids = 0;
+	}
+
+	/** Returns true if other is a SymbolSet whose IDs mean the same words. */
+	private boolean sharesSymbols(Set<String> other) {
+		return other instanceof SymbolSet && ((SymbolSet) other).symbols == symbols;
+	}
+
+	/** Creates a new Set and returns a union of this set and otherSet. The result
+	  * is a SymbolSet over this set's symbol table.
+	  */
+	public Set<String> union(Set<String> otherSet) {
+		if (!sharesSymbols(otherSet)) {
+			SymbolSet result = new SymbolSet(symbols, Arrays.copyOf(ids, Math.max(16, num_ids)), num_ids);
+			Iterator<String> iterator = otherSet.iterator();
+			while (iterator.hasNext()) {
+				result.add(iterator.next());
+			}
+			return result;
+		}
+		SymbolSet other = (SymbolSet) otherSet;
+		int[] merged = new int[Math.max(16, num_ids + other.num_ids)];
+		int size = 0;
+		int i = 0;
+		int j = 0;
+		while (i < num_ids && j < other.num_ids) {
+			int a = ids[i];
+			int b = other.ids[j];
+			if (a <= b) {
+				merged[size++] = a;
+				i++;
+				if (a == b) {
+					j++;
+				}
+			} else {
+				merged[size++] = b;
+				j++;
+			}
+		}
+		System.arraycopy(ids, i, merged, size, num_ids - i);
+		size += num_ids - i;
+		System.arraycopy(other.ids, j, merged, size, other.num_ids - j);
+		size += other.num_ids - j;
+		return new SymbolSet(symbols, merged, size);
+	}
+
+	/** Creates a new Set and returns an intersection of this set and otherSet. The
+	  * result is a SymbolSet over this set's symbol table.
+	  */
+	public Set<String> intersect(Set<String> otherSet) {
+		if (!sharesSymbols(otherSet)) {
+			SymbolSet result = new SymbolSet(symbols);
+			for (int i = 0; i < num_ids; i++) {
+				if (otherSet.contains(symbols.getWord(ids[i]))) {
+					result.append(ids[i]);
+				}
+			}
+			return result;
+		}
+		SymbolSet other = (SymbolSet) otherSet;
+		SymbolSet small = num_ids <= other.num_ids ? this : other;
+		SymbolSet large = small == this ? other : this;
+		int[] common = new int[Math.max(16, small.num_ids)];
+		int size = intersectInto(small, large, common);
+		return new SymbolSet(symbols, common, size);
+	}
+
+	/** Counts the words in both sets without building the intersection. */
+	public int intersectSize(SymbolSet other) {
+		if (other.symbols != symbols) {
+			int shared = 0;
+			for (int i = 0; i < num_ids; i++) {
+				if (other.contains(symbols.getWord(ids[i]))) {
+					shared++;
+				}
+			}
+			return shared;
+		}
+		SymbolSet small = num_ids <= other.num_ids ? this : other;
+		SymbolSet large = small == this ? other : this;
+		return intersectInto(small, large, null);
+	}
+
+	/** Writes the IDs in both sets to common, if it is not null, and returns how many
+	  * there are.
+	  */
+	private static int intersectInto(SymbolSet small, SymbolSet large, int[] common) {
+		int size = 0;
+		if ((long) small.num_ids * GALLOP_RATIO < large.num_ids) {
+			int from = 0;
+			for (int i = 0; i < small.num_ids && from < large.num_ids; i++) {
+				int id = small.ids[i];
+				from = gallop(large.ids, from, large.num_ids, id);
+				if (from < large.num_ids && large.ids[from] == id) {
+					if (common != null) {
+						common[size] = id;
+					}
+					size++;
+					from++;
+				}
+			}
+			return size;
+		}
+		/** Both indexes advance by comparisons rather than branches, which the
+		  * processor cannot predict on interleaved IDs.
+		  */
+		int i = 0;
+		int j = 0;
+		while (i < small.num_ids && j < large.num_ids) {
+			int a = small.ids[i];
+			int b = large.ids[j];
+			if (common != null) {
+				common[size] = a;
+			}
+			size += a == b ? 1 : 0;
+			i += a <= b ? 1 : 0;
+			j += a >= b ? 1 : 0;
+		}
+		return size;
+	}
+
+	/** Returns the first index at or after from whose ID is not less than id, or end
+	  * if there is none. Steps of 1, 2, 4, ... find a range holding it, which is then
+	  * binary searched, so the cost grows with the log of the distance moved.
+	  */
+	private static int gallop(int[] sorted, int from, int end, int id) {
+		int low = from;
+		int step = 1;
+		int high = from;
+		while (high < end && sorted[high] < id) {
+			low = high + 1;
+			high = from + step;
+			step *= 2;
+		}
+		high = Math.min(high, end);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (sorted[middle] < id) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/** Returns an iterator over the words in ID order. */
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			private int next = 0;
+
+			public boolean hasNext() {
+				return next < num_ids;
+			}
+
+			public String next() {
+				if (next >= num_ids) {
+					throw new NoSuchElementException();
+				}
+				return symbols.getWord(ids[next++]);
+			}
+		};
+	}
+
+	/** Returns the words of the set in ID order. */
+	public Object[] toArray() {
+		Object[] words = new Object[num_ids];
+		for (int i = 0; i < num_ids; i++) {
+			words[i] = symbols.getWord(ids[i]);
+		}
+		return words;
+	}
+
+	/** Returns a copy of the sorted IDs of the set. */
+	public int[] toIdArray() {
+		return Arrays.copyOf(ids, num_ids);
+	}
+}
@@ -0,0 +1,223 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+  * SymbolTable
+  * Gives every distinct word a small integer ID and one shared String. Words are
+  * looked up straight from the tokenizer's char slice or MappedWordCounter's byte
+  * slice, so the String is created only the first time a word is seen and repeated
+  * words allocate nothing. IDs are handed out in order from 0, so per-word data
+  * such as counts can live in plain arrays indexed by ID.
+  *
+  * The slots hold ID + 1 (0 marks an empty slot) and a copy of the word's hash, found
+  * by linear probing. Byte slices must be ASCII, which is all the tokenizers keep.
+  * A SymbolTable is not thread-safe.
+  */
+
+public class SymbolTable implements InstrumentedTable {
+	private static final int DEFAULT_CAPACITY = 1024;
+	private static final double MAX_LOAD_FACTOR = 0.5;
+
+	private int[] slot_ids;
+	private int[] slot_hashes;
+	private int mask;
+	private String[] words;
+	private int num_symbols;
+	private int resize_count;
+	private long resize_nanos;
+
+	public SymbolTable() {
+		this(0);
+	}
+
+	/** Creates a table that can hold the expected number of words without growing. */
+	public SymbolTable(int expected_words) {
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < 1 << 30 && expected_words + 1 > capacity * MAX_LOAD_FACTOR) {
+			capacity *= 2;
+		}
+		slot_ids = new int[capacity];
+		slot_hashes = new int[capacity];
+		mask = capacity - 1;
+		words = new String[Math.max(16, expected_words)];
+		num_symbols = 0;
+		resize_count = 0;
+		resize_nanos = 0;
+	}
+
+	/** Same polynomial as String.hashCode, so a slice and its String hash alike. */
+	public static int hash(char[] chars, int start, int length) {
+		int hash = 0;
+		for (int i = start; i < start + length; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		return hash;
+	}
+
+	public static int hash(byte[] bytes, int start, int length) {
+		int hash = 0;
+		for (int i = start; i < start + length; i++) {
+			hash = 31 * hash + (bytes[i] & 0xFF);
+		}
+		return hash;
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/** Gets the ID of the word in a char slice, adding the word if it is new. */
+	public int intern(char[] chars, int start, int length) {
+		int hash = hash(chars, start, length);
+		int index = spread(hash) & mask;
+		while (slot_ids[index] != 0) {
+			int id = slot_ids[index] - 1;
+			if (slot_hashes[index] == hash && sameWord(words[id], chars, start, length)) {
+				return id;
+			}
+			index = (index + 1) & mask;
+		}
+		return addAt(index, hash, new String(chars, start, length));
+	}
+
+	/** Gets the ID of the word in an ASCII byte slice, adding the word if it is new.
+	  * The hash must be hash(bytes, start, length), which callers that read the word
+	  * one byte at a time can compute as they go.
+	  */
+	public int intern(byte[] bytes, int start, int length, int hash) {
+		int index = spread(hash) & mask;
+		while (slot_ids[index] != 0) {
+			int id = slot_ids[index] - 1;
+			if (slot_hashes[index] == hash && sameWord(words[id], bytes, start, length)) {
+				return id;
+			}
+			index = (index + 1) & mask;
+		}
+		return addAt(index, hash, new String(bytes, start, length, StandardCharsets.ISO_8859_1));
+	}
+
+	/** Gets the ID of a word, adding the word if it is new. */
+	public int intern(String word) {
+		int hash = word.hashCode();
+		int index = spread(hash) & mask;
+		while (slot_ids[index] != 0) {
+			int id = slot_ids[index] - 1;
+			if (slot_hashes[index] == hash && words[id].equals(word)) {
+				return id;
+			}
+			index = (index + 1) & mask;
+		}
+		return addAt(index, hash, word);
+	}
+
+	/** Gets the ID of a word, or -1 if it is not in the table. */
+	public int find(String word) {
+		int hash = word.hashCode();
+		int index = spread(hash) & mask;
+		while (slot_ids[index] != 0) {
+			int id = slot_ids[index] - 1;
+			if (slot_hashes[index] == hash && words[id].equals(word)) {
+				return id;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/** Gets the shared String of an ID. */
+	public String getWord(int id) {
+		if (id < 0 || id >= num_symbols) {
+			throw new IndexOutOfBoundsException("No symbol " + id);
+		}
+		return words[id];
+	}
+
+	/** Gets the number of words in the table, one more than the largest ID. */
+	public int size() {
+		return num_symbols;
+	}
+
+	private int addAt(int index, int hash, String word) {
+		int id = num_symbols;
+		if (id == words.length) {
+			words = Arrays.copyOf(words, id * 2);
+		}
+		words[id] = word;
+		slot_ids[index] = id + 1;
+		slot_hashes[index] = hash;
+		num_symbols++;
+		if (num_symbols > slot_ids.length * MAX_LOAD_FACTOR) {
+			grow();
+		}
+		return id;
+	}
+
+	private static boolean sameWord(String word, char[] chars, int start, int length) {
+		if (word.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) != chars[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean sameWord(String word, byte[] bytes, int start, int length) {
+		if (word.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (word.charAt(i) != (bytes[start + i] & 0xFF)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** Doubles the number of slots. IDs do not change. */
+	private void grow() {
+		int[] old_ids = slot_ids;
+		int[] old_hashes = slot_hashes;
+		long started = System.nanoTime();
+		int capacity = old_ids.length * 2;
+		slot_ids = new int[capacity];
+		slot_hashes = new int[capacity];
+		mask = capacity - 1;
+		for (int i = 0; i < old_ids.length; i++) {
+			if (old_ids[i] != 0) {
+				int index = spread(old_hashes[i]) & mask;
+				while (slot_ids[index] != 0) {
+					index = (index + 1) & mask;
+				}
+				slot_ids[index] = old_ids[i];
+				slot_hashes[index] = old_hashes[i];
+			}
+		}
+		resize_count++;
+		resize_nanos += System.nanoTime() - started;
+	}
+
+	public int getResizeCount() {
+		return resize_count;
+	}
+
+	public long getResizeNanos() {
+		return resize_nanos;
+	}
+
+	/** Gets the number of words found on each probe, from each word's distance to
+	  * its home slot.
+	  */
+	public long[] getProbeHistogram() {
+		long[] histogram = new long[HashStatistics.HISTOGRAM_SIZE];
+		for (int i = 0; i < slot_ids.length; i++) {
+			if (slot_ids[i] != 0) {
+				int probes = ((i - spread(slot_hashes[i])) & mask) + 1;
+				histogram[Math.min(probes, histogram.length - 1)]++;
+			}
+		}
+		return histogram;
+	}
+}
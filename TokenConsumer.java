@@ -0,0 +1,12 @@
+/**
+ * A callback that receives the words found by a Tokenizer.
+ */
+public interface TokenConsumer {
+    /** Receives one word. The characters are only valid for the duration of the
+     * call, so implementations must copy them if they keep the word.
+     * @param chars A buffer holding the lowercased word.
+     * @param start The index of the first character of the word.
+     * @param length The number of characters in the word.
+     */
+    public void accept(char[] chars, int start, int length);
+}
@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+  * Tokenizer
+  * Splits a character stream into lowercase words in a single pass. Words are
+  * separated by whitespace, apostrophes and hyphens, every other character that is
+  * not an ASCII letter is dropped, and ASCII letters are lowercased in place in the
+  * read buffer. Each word is handed to a TokenConsumer as a slice of that buffer, so
+  * no String is created unless the consumer makes one.
+  *
+  * ASCII characters are classified and lowercased through tables: every character is
+  * written to the word and the write index only moves past letters, so dropping a
+  * character takes no branch. Only the end of a word does.
+  *
+  * In Unicode mode, letters and combining marks of any script are kept, the
+  * typographic apostrophe and dashes also separate words, and each ideograph is a
+  * word of its own, since scripts such as Chinese do not put spaces between words.
+  * Words are case folded and put in NFC, so "CAFE" and "cafe" with an accented e,
+  * composed or written as e and a combining accent, count as one word. Non-ASCII
+  * characters are only copied into the word while scanning, and the slower folding
+  * runs once the word is complete, only for words that contain one.
+  *
+  * A WordFilter, if given, is checked on each word after folding, and words it
+  * rejects are dropped before they reach the consumer.
+  */
+
+public class Tokenizer {
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/** Classes of ASCII characters. LETTER is 1 so it can be added to an index. */
+	private static final byte DROPPED = 0;
+	private static final byte LETTER = 1;
+	private static final byte SEPARATOR = 2;
+	private static final byte[] ASCII_CLASS = new byte[128];
+	/** Each ASCII character lowercased. */
+	private static final char[] ASCII_LOWER = new char[128];
+	static {
+		for (int c = 0; c < 128; c++) {
+			ASCII_CLASS[c] = DROPPED;
+			ASCII_LOWER[c] = (char) c;
+			if (c >= 'A' && c <= 'Z') {
+				ASCII_CLASS[c] = LETTER;
+				ASCII_LOWER[c] = (char) (c + ('a' - 'A'));
+			} else if (c >= 'a' && c <= 'z') {
+				ASCII_CLASS[c] = LETTER;
+			} else if (c == '\'' || c == '-' || Character.isWhitespace((char) c)) {
+				ASCII_CLASS[c] = SEPARATOR;
+			}
+		}
+	}
+
+	private char[] buffer;
+	private WordFilter filter;
+	private boolean unicode;
+	/** Holds the letters of a non-ASCII word while it is folded. */
+	private StringBuilder letters;
+	private long token_count;
+	private long dropped_count;
+
+	public Tokenizer() {
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	public Tokenizer(int buffer_size) {
+		this(buffer_size, null, false);
+	}
+
+	/** Creates a tokenizer that passes on only the words the filter keeps, or every
+	  * word if the filter is null.
+	  */
+	public Tokenizer(WordFilter filter) {
+		this(DEFAULT_BUFFER_SIZE, filter, false);
+	}
+
+	/** Creates a tokenizer that keeps the letters of every script and folds their case
+	  * if unicode is true, or only ASCII letters otherwise.
+	  */
+	public Tokenizer(WordFilter filter, boolean unicode) {
+		this(DEFAULT_BUFFER_SIZE, filter, unicode);
+	}
+
+	public Tokenizer(int buffer_size, WordFilter filter, boolean unicode) {
+		buffer = new char[buffer_size];
+		this.filter = filter;
+		this.unicode = unicode;
+		letters = new StringBuilder();
+		token_count = 0;
+		dropped_count = 0;
+	}
+
+	/** Returns true if a character outside ASCII ends the current word: any
+	  * whitespace, and in Unicode mode the typographic apostrophes and the dashes.
+	  */
+	private boolean isWideSeparator(char c) {
+		if (Character.isWhitespace(c)) {
+			return true;
+		}
+		return unicode && (c == '\u2018' || c == '\u2019' || (c >= '\u2010' && c <= '\u2015'));
+	}
+
+	/** Reads the stream to its end and passes every word the filter keeps to the
+	  * consumer.
+	  * @return The number of words found in the stream, kept or not.
+	  */
+	public long tokenize(Reader reader, TokenConsumer consumer) throws IOException {
+		long found = 0;
+		/** carry is the number of characters of an unfinished word that were moved
+		  * to the front of the buffer, word_start is the index of the current word
+		  * and write is where its next character goes, so the word is empty while
+		  * write equals word_start. Dropped characters are skipped by write, so it
+		  * never passes the character being read.
+		  */
+		int carry = 0;
+		int word_start = 0;
+		int write = 0;
+		boolean ascii = true;
+		int read = reader.read(buffer, carry, buffer.length - carry);
+		while (read != -1) {
+			int end = carry + read;
+			for (int i = carry; i < end; i++) {
+				char c = buffer[i];
+				if (c < 0x80) {
+					byte kind = ASCII_CLASS[c];
+					buffer[write] = ASCII_LOWER[c];
+					write += kind & LETTER;
+					if (kind == SEPARATOR && write > word_start) {
+						found += emit(consumer, word_start, write - word_start, ascii);
+						word_start = write;
+						ascii = true;
+					}
+				} else if (isWideSeparator(c)) {
+					if (write > word_start) {
+						found += emit(consumer, word_start, write - word_start, ascii);
+						word_start = write;
+						ascii = true;
+					}
+				} else if (unicode) {
+					buffer[write++] = c;
+					ascii = false;
+				}
+			}
+
+			/** Moves the unfinished word to the front of the buffer, growing the
+			  * buffer if the word fills it.
+			  */
+			carry = write - word_start;
+			System.arraycopy(buffer, word_start, buffer, 0, carry);
+			word_start = 0;
+			write = carry;
+			if (carry == buffer.length) {
+				char[] bigger = new char[buffer.length * 2];
+				System.arraycopy(buffer, 0, bigger, 0, carry);
+				buffer = bigger;
+			}
+			read = reader.read(buffer, carry, buffer.length - carry);
+		}
+		if (write > word_start) {
+			found += emit(consumer, word_start, write - word_start, ascii);
+		}
+		token_count += found;
+		return found;
+	}
+
+	/** Passes a finished word to the consumer, folding it first if it is not ASCII.
+	  * @return The number of words it made, kept or not.
+	  */
+	private int emit(TokenConsumer consumer, int start, int length, boolean ascii) {
+		if (ascii) {
+			accept(consumer, buffer, start, length);
+			return 1;
+		}
+		return emitUnicode(consumer, start, length);
+	}
+
+	/** Passes a word to the consumer unless the filter drops it. */
+	private void accept(TokenConsumer consumer, char[] chars, int start, int length) {
+		if (filter == null || filter.keep(chars, start, length)) {
+			consumer.accept(chars, start, length);
+		} else {
+			dropped_count++;
+		}
+	}
+
+	/** Splits a word with non-ASCII characters at its ideographs, drops what is not a
+	  * letter or mark and passes on each part folded.
+	  */
+	private int emitUnicode(TokenConsumer consumer, int start, int length) {
+		int words = 0;
+		int i = start;
+		while (i < start + length) {
+			int code_point = Character.codePointAt(buffer, i, start + length);
+			i += Character.charCount(code_point);
+			if (Character.isIdeographic(code_point)) {
+				words += emitFolded(consumer);
+				letters.appendCodePoint(code_point);
+				words += emitFolded(consumer);
+			} else if (isWordPart(code_point)) {
+				letters.appendCodePoint(code_point);
+			}
+		}
+		return words + emitFolded(consumer);
+	}
+
+	private static boolean isWordPart(int code_point) {
+		switch (Character.getType(code_point)) {
+		case Character.UPPERCASE_LETTER:
+		case Character.LOWERCASE_LETTER:
+		case Character.TITLECASE_LETTER:
+		case Character.MODIFIER_LETTER:
+		case Character.OTHER_LETTER:
+		case Character.NON_SPACING_MARK:
+		case Character.COMBINING_SPACING_MARK:
+		case Character.ENCLOSING_MARK:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/** Passes on the collected letters, case folded and in NFC, and clears them.
+	  * @return 1, or 0 if no letters were collected.
+	  */
+	private int emitFolded(TokenConsumer consumer) {
+		if (letters.length() == 0) {
+			return 0;
+		}
+		String word = Normalizer.normalize(fold(letters), Normalizer.Form.NFC);
+		letters.setLength(0);
+		char[] chars = word.toCharArray();
+		accept(consumer, chars, 0, chars.length);
+		return 1;
+	}
+
+	/** Folds case by uppercasing, which expands letters such as sharp s to "SS", and then
+	  * lowercasing each code point on its own, so no lowercasing depends on context the
+	  * way a final sigma does.
+	  */
+	private static String fold(CharSequence word) {
+		String upper = word.toString().toUpperCase(Locale.ROOT);
+		StringBuilder folded = new StringBuilder(upper.length());
+		int i = 0;
+		while (i < upper.length()) {
+			int code_point = upper.codePointAt(i);
+			folded.appendCodePoint(Character.toLowerCase(code_point));
+			i += Character.charCount(code_point);
+		}
+		return folded.toString();
+	}
+
+	/** Gets the total number of words found by this tokenizer, kept or not. */
+	public long getTokenCount() {
+		return token_count;
+	}
+
+	/** Gets the total number of words the filter has dropped, including any dropped so
+	  * far by a tokenize call still running on this thread.
+	  */
+	public long getDroppedCount() {
+		return dropped_count;
+	}
+
+	/** Gets the total number of words passed to consumers by tokenize calls that have
+	  * returned.
+	  */
+	public long getKeptCount() {
+		return token_count - dropped_count;
+	}
+}
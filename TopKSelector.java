@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * TopKSelector
+  * Selects the K most frequent words from a stream of (word, count) entries by
+  * keeping a bounded min-heap of size K. Ties are broken deterministically: a higher
+  * count ranks first, then the word that comes first alphabetically. A selector built
+  * without a limit keeps every entry and returns the complete ranked list.
+  */
+
+public class TopKSelector {
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The number of entries to keep, or 0 if every entry is kept. */
+	private int k;
+	private String[] heap_words;
+	private int[] heap_counts;
+	private int heap_size;
+
+	/** Creates a selector that keeps every entry (exact full-sort mode). */
+	public TopKSelector() {
+		k = 0;
+		heap_words = new String[INITIAL_CAPACITY];
+		heap_counts = new int[INITIAL_CAPACITY];
+		heap_size = 0;
+	}
+
+	/** Creates a selector that keeps the k highest ranked entries. */
+	public TopKSelector(int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("k must be positive: " + k);
+		}
+		this.k = k;
+		heap_words = new String[Math.min(k, INITIAL_CAPACITY)];
+		heap_counts = new int[heap_words.length];
+		heap_size = 0;
+	}
+
+	/** Class that stores a ranked word and its count. */
+	private static class KVPair implements DictPair<String, Integer> {
+		private String key;
+		private Integer value;
+
+		public KVPair(String key_value, Integer data_value) {
+			key = key_value;
+			value = data_value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		public Integer getValue() {
+			return value;
+		}
+	}
+
+	/** Returns true if entry (word_a, count_a) ranks below entry (word_b, count_b). */
+	private static boolean ranksBelow(String word_a, int count_a, String word_b, int count_b) {
+		if (count_a != count_b) {
+			return count_a < count_b;
+		}
+		return word_a.compareTo(word_b) > 0;
+	}
+
+	/** Returns true if an entry with the given count could still enter the selection.
+	  * Callers that build the word lazily can use this to skip entries cheaply.
+	  */
+	public boolean accepts(int count) {
+		return k == 0 || heap_size < k || count >= heap_counts[0];
+	}
+
+	/** Offers one entry to the selector. */
+	public void offer(String word, int count) {
+		if (k == 0 || heap_size < k) {
+			if (heap_size == heap_words.length) {
+				grow();
+			}
+			heap_words[heap_size] = word;
+			heap_counts[heap_size] = count;
+			heap_size++;
+			siftUp(heap_size - 1);
+		} else if (ranksBelow(heap_words[0], heap_counts[0], word, count)) {
+			/** The new entry beats the lowest ranked kept entry, so it replaces
+			  * the root of the min-heap.
+			  */
+			heap_words[0] = word;
+			heap_counts[0] = count;
+			siftDown(0);
+		}
+	}
+
+	/** Offers every entry of the dictionary and returns the ranked selection. The
+	  * entries are visited in place, so only the selected entries are copied.
+	  */
+	public ArrayList<DictPair<String, Integer>> select(Dictionary<String, Integer> d) {
+		if (d instanceof CounterDictionary) {
+			((CounterDictionary) d).forEachCount(new ObjIntConsumer<String>() {
+				public void accept(String word, int count) {
+					offer(word, count);
+				}
+			});
+		} else {
+			d.forEachEntry(new BiConsumer<String, Integer>() {
+				public void accept(String word, Integer count) {
+					offer(word, count);
+				}
+			});
+		}
+		return result();
+	}
+
+	/** Returns the kept entries from highest to lowest rank and empties the selector. */
+	public ArrayList<DictPair<String, Integer>> result() {
+		ArrayList<DictPair<String, Integer>> result =
+		new ArrayList<DictPair<String, Integer>>(heap_size);
+		/** Repeatedly removes the lowest ranked entry, so the list is filled from the
+		  * lowest rank up and then reversed.
+		  */
+		while (heap_size > 0) {
+			result.add(new KVPair(heap_words[0], heap_counts[0]));
+			heap_size--;
+			heap_words[0] = heap_words[heap_size];
+			heap_counts[0] = heap_counts[heap_size];
+			heap_words[heap_size] = null;
+			siftDown(0);
+		}
+		Collections.reverse(result);
+		return result;
+	}
+
+	/** Gets the number of entries currently kept. */
+	public int size() {
+		return heap_size;
+	}
+
+	private void grow() {
+		int new_capacity = heap_words.length * 2;
+		if (k != 0 && new_capacity > k) {
+			new_capacity = k;
+		}
+		String[] new_words = new String[new_capacity];
+		int[] new_counts = new int[new_capacity];
+		System.arraycopy(heap_words, 0, new_words, 0, heap_size);
+		System.arraycopy(heap_counts, 0, new_counts, 0, heap_size);
+		heap_words = new_words;
+		heap_counts = new_counts;
+	}
+
+	private void siftUp(int index) {
+		String word = heap_words[index];
+		int count = heap_counts[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (!ranksBelow(word, count, heap_words[parent], heap_counts[parent])) {
+				break;
+			}
+			heap_words[index] = heap_words[parent];
+			heap_counts[index] = heap_counts[parent];
+			index = parent;
+		}
+		heap_words[index] = word;
+		heap_counts[index] = count;
+	}
+
+	private void siftDown(int index) {
+		if (heap_size == 0) {
+			return;
+		}
+		String word = heap_words[index];
+		int count = heap_counts[index];
+		int half = heap_size / 2;
+		while (index < half) {
+			int child = 2 * index + 1;
+			int right = child + 1;
+			if (right < heap_size && ranksBelow(heap_words[right], heap_counts[right],
+					heap_words[child], heap_counts[child])) {
+				child = right;
+			}
+			if (!ranksBelow(heap_words[child], heap_counts[child], word, count)) {
+				break;
+			}
+			heap_words[index] = heap_words[child];
+			heap_counts[index] = heap_counts[child];
+			index = child;
+		}
+		heap_words[index] = word;
+		heap_counts[index] = count;
+	}
+}
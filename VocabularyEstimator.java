@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+  * VocabularyEstimator
+  * Estimates how many distinct words a file contains so that dictionaries can be
+  * created at their final size. A few slices spread over the file are counted, and
+  * the vocabulary of the whole file is extrapolated with Heaps' law,
+  * V(n) = K * n^BETA, which relates the number of distinct words V to the number of
+  * words n. Files no larger than the sample are counted exactly.
+  */
+
+public class VocabularyEstimator {
+	/** Number of slices sampled and the size of each. */
+	private static final int SAMPLE_SLICES = 4;
+	private static final long SLICE_SIZE = 256 * 1024;
+	/** Heaps' law exponent. English text measures between 0.4 and 0.6; the upper end
+	  * is used because a slightly oversized table costs less than a rehash.
+	  */
+	private static final double BETA = 0.6;
+	private static final double SAFETY_FACTOR = 1.25;
+	private static final int MAX_ESTIMATE = 1 << 28;
+
+	/** Returns an estimate of the number of distinct words in the file. */
+	public static int estimateDistinctWords(FileChannel channel) throws IOException {
+		long file_size = channel.size();
+		MappedWordCounter sample = new MappedWordCounter();
+		if (file_size <= SAMPLE_SLICES * SLICE_SIZE) {
+			sample.countFile(channel);
+			return sample.getDistinctCount();
+		}
+
+		/** Counts slices at the start, the end and evenly spaced in between, so a
+		  * header or a change of topic in one part of the file does not skew the sample.
+		  */
+		long step = (file_size - SLICE_SIZE) / (SAMPLE_SLICES - 1);
+		for (int i = 0; i < SAMPLE_SLICES; i++) {
+			long start = i * step;
+			sample.count(channel, start, start + SLICE_SIZE);
+		}
+		long sample_words = sample.getTokenCount();
+		if (sample_words == 0) {
+			return 0;
+		}
+		double total_words = sample_words * (file_size / (double) (SAMPLE_SLICES * SLICE_SIZE));
+		double estimate = sample.getDistinctCount() * Math.pow(total_words / sample_words, BETA);
+		return (int) Math.min(MAX_ESTIMATE, estimate * SAFETY_FACTOR);
+	}
+}
@@ -0,0 +1,291 @@
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.ObjIntConsumer;
+
+/**
+  * WindowedCounter
+  * A dictionary of word counts over a sliding window of the most recent words or
+  * seconds instead of the whole input. The window is a ring of buckets, each counting
+  * the words of one slice of the window, and an aggregate holding the sum of every
+  * bucket. When the newest bucket is full (or its time slice has passed) the ring
+  * moves on and the oldest bucket is subtracted from the aggregate and emptied.
+  *
+  * Every word counted in a bucket is subtracted at most once when the bucket expires,
+  * so eviction costs O(1) per word amortized and the history is never rescanned. The
+  * window moves a whole bucket at a time: a window of words never holds more than
+  * window words, and once that many have been counted it never holds fewer than
+  * window less one bucket's share, so more buckets give a smoother window. The shares
+  * of a word window differ by at most one word so that they add up to the window.
+  * A window of seconds covers between window - window / buckets and window seconds.
+  */
+
+public class WindowedCounter implements CounterDictionary {
+	public static final int DEFAULT_BUCKETS = 16;
+
+	private OpenHashCounterDictionary[] buckets;
+	private long[] bucket_tokens;
+	private int current;
+	private OpenHashCounterDictionary aggregate;
+	private long window_tokens;
+	/** True if buckets are slices of time, false if they are runs of words. */
+	private boolean timed;
+	/** Words per bucket, or nanoseconds per bucket if timed. */
+	private long bucket_span;
+	/** Number of buckets of a word window, the first ones in the ring, that hold one
+	  * word more than bucket_span.
+	  */
+	private long longer_buckets;
+	/** Index of the time slice the current bucket covers, if timed. */
+	private long current_slice;
+
+	private WindowedCounter(long window, boolean timed, int bucket_count) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("window must be positive: " + window);
+		}
+		if (bucket_count <= 0) {
+			throw new IllegalArgumentException("bucket count must be positive: " + bucket_count);
+		}
+		buckets = new OpenHashCounterDictionary[bucket_count];
+		for (int i = 0; i < bucket_count; i++) {
+			buckets[i] = new OpenHashCounterDictionary();
+		}
+		bucket_tokens = new long[bucket_count];
+		current = 0;
+		aggregate = new OpenHashCounterDictionary();
+		window_tokens = 0;
+		this.timed = timed;
+		bucket_span = Math.max(1, window / bucket_count);
+		longer_buckets = timed ? 0 : window % bucket_count;
+		current_slice = timed ? System.nanoTime() / bucket_span : 0;
+	}
+
+	/** Creates a counter over the last window_words words. */
+	public static WindowedCounter overWords(long window_words) {
+		return overWords(window_words, DEFAULT_BUCKETS);
+	}
+
+	public static WindowedCounter overWords(long window_words, int bucket_count) {
+		return new WindowedCounter(window_words, false, Math.min(bucket_count, (int) Math.min(window_words, Integer.MAX_VALUE)));
+	}
+
+	/** Creates a counter over the words of the last window_seconds seconds. */
+	public static WindowedCounter overSeconds(int window_seconds) {
+		return overSeconds(window_seconds, DEFAULT_BUCKETS);
+	}
+
+	public static WindowedCounter overSeconds(int window_seconds, int bucket_count) {
+		if (window_seconds <= 0) {
+			throw new IllegalArgumentException("window must be positive: " + window_seconds);
+		}
+		return new WindowedCounter(window_seconds * 1000000000L, true, bucket_count);
+	}
+
+	/** Moves the ring forward one bucket, evicting the oldest bucket. */
+	private void rotate() {
+		current = (current + 1) % buckets.length;
+		OpenHashCounterDictionary oldest = buckets[current];
+		oldest.forEachCount(new ObjIntConsumer<String>() {
+			public void accept(String word, int count) {
+				if (aggregate.addTo(word, -count) == 0) {
+					aggregate.remove(word);
+				}
+			}
+		});
+		oldest.clear();
+		window_tokens -= bucket_tokens[current];
+		bucket_tokens[current] = 0;
+	}
+
+	/** Evicts the buckets whose time slices have left the window. Does nothing when
+	  * the window is counted in words.
+	  */
+	private void expire() {
+		if (!timed) {
+			return;
+		}
+		long slice = System.nanoTime() / bucket_span;
+		long steps = slice - current_slice;
+		if (steps <= 0) {
+			return;
+		}
+		if (steps >= buckets.length) {
+			/** The whole window has passed, so every bucket is evicted once. */
+			steps = buckets.length;
+		}
+		for (long i = 0; i < steps; i++) {
+			rotate();
+		}
+		current_slice = slice;
+	}
+
+	/** Gets the bucket new words are counted in, moving the ring first if the current
+	  * bucket already holds its share of a word window.
+	  */
+	private OpenHashCounterDictionary currentBucket() {
+		if (timed) {
+			expire();
+		} else if (bucket_tokens[current] >= bucket_span + (current < longer_buckets ? 1 : 0)) {
+			rotate();
+		}
+		return buckets[current];
+	}
+
+	/** Adds delta to the count of a word in the newest part of the window. Each call
+	  * counts as delta words of the window.
+	  * @return The new count of the word over the window.
+	  */
+	public int addTo(String key, int delta) {
+		currentBucket().addTo(key, delta);
+		bucket_tokens[current] += delta;
+		window_tokens += delta;
+		int count = aggregate.addTo(key, delta);
+		if (count == 0) {
+			aggregate.remove(key);
+		}
+		return count;
+	}
+
+	/** Counts one occurrence of a word.
+	  * @return The count of the word over the window.
+	  */
+	public int increment(String key) {
+		return addTo(key, 1);
+	}
+
+	/** Gets the count of a word over the window, or 0 if it does not occur in it. */
+	public int getCount(String key) {
+		expire();
+		return aggregate.getCount(key);
+	}
+
+	/** Gets the number of words in the window, the denominator for frequencies. */
+	public long getWindowTokenCount() {
+		expire();
+		return window_tokens;
+	}
+
+	/** Sets the count of a word over the window by counting the difference in the
+	  * newest bucket.
+	  */
+	public Integer add(String key, Integer value) {
+		Integer old_value = getValue(key);
+		addTo(key, value - (old_value == null ? 0 : old_value));
+		return old_value;
+	}
+
+	/** Removes a word from every bucket of the window. */
+	public Integer remove(String key) {
+		expire();
+		Integer old_value = aggregate.remove(key);
+		if (old_value == null) {
+			return null;
+		}
+		for (int i = 0; i < buckets.length; i++) {
+			Integer count = buckets[i].remove(key);
+			if (count != null) {
+				bucket_tokens[i] -= count;
+				window_tokens -= count;
+			}
+		}
+		return old_value;
+	}
+
+	public Integer getValue(String key) {
+		expire();
+		return aggregate.getValue(key);
+	}
+
+	public boolean contains(String key) {
+		expire();
+		return aggregate.contains(key);
+	}
+
+	/** Returns a Set that contains all the words in the window. */
+	public Set<String> getKeySet() {
+		expire();
+		return aggregate.getKeySet();
+	}
+
+	/** Returns a Set of the words in the window and their counts. */
+	public Set<DictPair<String, Integer>> getEntrySet() {
+		expire();
+		return aggregate.getEntrySet();
+	}
+
+	public void forEachEntry(BiConsumer<? super String, ? super Integer> action) {
+		expire();
+		aggregate.forEachEntry(action);
+	}
+
+	public void forEachCount(ObjIntConsumer<? super String> action) {
+		expire();
+		aggregate.forEachCount(action);
+	}
+
+	/** Adds every entry of another dictionary to the newest part of the window. */
+	public void mergeAll(Dictionary<String, Integer> other, final BinaryOperator<Integer> combiner) {
+		other.forEachEntry(new BiConsumer<String, Integer>() {
+			public void accept(String key, Integer value) {
+				Integer existing_value = getValue(key);
+				if (existing_value == null) {
+					addTo(key, value);
+				} else {
+					add(key, combiner.apply(existing_value, value));
+				}
+			}
+		});
+	}
+
+	/** Gets the number of distinct words in the window. */
+	public int size() {
+		expire();
+		return aggregate.size();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/** Empties the window. */
+	public void clear() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i].clear();
+			bucket_tokens[i] = 0;
+		}
+		aggregate.clear();
+		window_tokens = 0;
+	}
+
+	/** Checks that word windows of many sizes never hold more than their size and,
+	  * once full, never less than their size less one bucket, and that their counts
+	  * are those of the words they hold.
+	  */
+	public static void main(String[] args) {
+		int bad = 0;
+		for (int window = 1; window <= 150; window++) {
+			for (int bucket_count = 1; bucket_count <= 20; bucket_count++) {
+				WindowedCounter counter = WindowedCounter.overWords(window, bucket_count);
+				int largest_bucket = (window + bucket_count - 1) / bucket_count;
+				int[] words = new int[3 * window];
+				for (int i = 0; i < words.length; i++) {
+					words[i] = (i * 7 + i / 5) % 11;
+					counter.increment("w" + words[i]);
+					long held = counter.getWindowTokenCount();
+					if (held > window || held < Math.min(i + 1, window - largest_bucket + 1)) {
+						bad++;
+					}
+					int[] expected = new int[11];
+					for (int j = i + 1 - (int) held; j <= i; j++) {
+						expected[words[j]]++;
+					}
+					for (int w = 0; w < 11; w++) {
+						if (counter.getCount("w" + w) != expected[w]) {
+							bad++;
+						}
+					}
+				}
+			}
+		}
+		System.out.println(bad);
+	}
+}
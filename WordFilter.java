@@ -0,0 +1,42 @@
+import java.io.IOException;
+
+/**
+  * WordFilter
+  * Decides which words a Tokenizer passes on to its consumer, from an allow list (only
+  * listed words are kept) and a stop list (listed words are dropped), either of which
+  * may be absent. Both are PerfectWordSets, so a word is checked on the tokenizer's
+  * buffer before any counting table sees it. Safe to share between threads.
+  */
+
+public class WordFilter {
+	private PerfectWordSet allowed;
+	private PerfectWordSet stopped;
+
+	/** Creates a filter from an allow list and a stop list, either of which may be null. */
+	public WordFilter(PerfectWordSet allowed, PerfectWordSet stopped) {
+		this.allowed = allowed;
+		this.stopped = stopped;
+	}
+
+	/** Compiles the word lists at the given paths, either of which may be null, split
+	  * into words in Unicode mode if unicode is true.
+	  * @return The filter, or null if both paths are null.
+	  * @throws IOException if a list cannot be read.
+	  */
+	public static WordFilter load(String allow_path, String stop_path, boolean unicode) throws IOException {
+		if (allow_path == null && stop_path == null) {
+			return null;
+		}
+		PerfectWordSet allowed = allow_path == null ? null : PerfectWordSet.load(allow_path, unicode);
+		PerfectWordSet stopped = stop_path == null ? null : PerfectWordSet.load(stop_path, unicode);
+		return new WordFilter(allowed, stopped);
+	}
+
+	/** Returns true if the word in the slice should be counted. */
+	public boolean keep(char[] chars, int start, int length) {
+		if (allowed != null && !allowed.contains(chars, start, length)) {
+			return false;
+		}
+		return stopped == null || !stopped.contains(chars, start, length);
+	}
+}
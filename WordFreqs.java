@@ -1,10 +1,19 @@
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.util.Scanner;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.Arrays;
 import java.text.DecimalFormat;
 
 /**
@@ -12,8 +21,8 @@ import java.text.DecimalFormat;
   * Justin Lim
   * 06/01/14 (Modified 06/06/14)
   * This program stores the frequency in which words are used in a text file given
-  * by the command line and then prints the 20 most common words. (This program uses
-  * a list implemented by MysteryListImplementation.)
+  * by the command line and then prints the most common words (20 by default).
+  * (This program uses a list implemented by MysteryListImplementation.)
   */
   
 public class WordFreqs {
@@ -41,171 +50,770 @@ public class WordFreqs {
     	}
 	}
 	
-	/** Takes a dictionary of words and number of times each word is used in a text file
-	  * and prints the 20 most frequently used words.
+	/** TokenConsumer for streaming runs. Counts every word, keeps the top K up to
+	  * date and prints a ranked snapshot every few words or seconds. With a window
+	  * the counts only cover the most recent words, so the top K is selected from
+	  * the window when a snapshot is printed. Given the tokenizer, snapshots without
+	  * a window also count the words its filter dropped.
 	  */
-	public void printTopTwenty(Dictionary<String, Integer> d, int n) {
-		Dictionary<String, Integer> found_words = d;
+	private static class SnapshotCounter implements TokenConsumer {
+		private int k;
+		private CounterDictionary words;
+		private StreamingTopK top;
+		private WindowedCounter window;
+		private long n;
+		private long every_words;
+		private long next_words;
+		private long interval_nanos;
+		private long next_time;
+		private Metrics metrics;
+		private PrintStream metrics_output;
+		private long reported_n;
+		private Tokenizer tokenizer;
 		
-		/** Creates a set of DictPairs for all the entries in the dictionary. */
-		Set<DictPair<String, Integer>> unsorted_set = found_words.getEntrySet();
-		
-		/** Converts set of DictPairs to array of DictPairs. */
-		@SuppressWarnings("unchecked")
-		Object[] unsorted_array = (Object[]) new Object[unsorted_set.size()];
-		Iterator<DictPair<String, Integer>> unsorted_iterator = unsorted_set.iterator();
-		int j = 0;
-		while (unsorted_iterator.hasNext()) {
-			unsorted_array[j] = unsorted_iterator.next();
-			j++;
+		public SnapshotCounter(int k, int every_words, int interval_seconds, WindowedCounter window,
+		Metrics metrics, PrintStream metrics_output, Tokenizer tokenizer) {
+			this.k = k;
+			this.window = window;
+			this.tokenizer = tokenizer;
+			this.metrics = metrics;
+			this.metrics_output = metrics_output;
+			reported_n = 0;
+			if (window == null) {
+				OpenHashCounterDictionary counts = new OpenHashCounterDictionary();
+				metrics.setTable(counts);
+				words = counts;
+				top = new StreamingTopK(k);
+			} else {
+				words = window;
+			}
+			n = 0;
+			this.every_words = every_words;
+			next_words = every_words;
+			interval_nanos = interval_seconds * 1000000000L;
+			next_time = System.nanoTime() + interval_nanos;
 		}
 		
-		/** Creates empty array to store sorted entries. */
-		@SuppressWarnings("unchecked")
-		Object[] sorted_array = (Object[]) new Object[unsorted_array.length];
-		
-		/** Runs insertion sort on unsorted array return sorted array. */
-		sorted_array = insertionSort(unsorted_array, 1, unsorted_array.length);
-		
-		/** Creates empty array to store 20 most frequently used words. */
-		int size_of_final = 0;
-		if (sorted_array.length < 20) {
-			size_of_final = sorted_array.length;
-		} else { 
-			size_of_final = 20;
-		}
-		@SuppressWarnings("unchecked")
-		Object[] top_20_array = (Object[]) new Object[size_of_final];
+		public void accept(char[] chars, int start, int length) {
+			String word = new String(chars, start, length);
+			int count = words.increment(word);
+			if (top != null) {
+				top.update(word, count);
+			}
+			n++;
+			if (every_words > 0 && n >= next_words) {
+				next_words += every_words;
+				printSnapshot();
+			} else if (interval_nanos > 0 && System.nanoTime() >= next_time) {
+				printSnapshot();
+			}
+		}
 		
-		/** Adds 20 most frequent entries to array. */
-		if (sorted_array.length < 20) {
-			int counter_1 = 0;
-			for (int i = (sorted_array.length - 1); i >= 0 ; i--) {
-				top_20_array[counter_1] = sorted_array[i];
-				counter_1++;
+		/** Prints the current top K, normalized by the number of words so far or
+		  * the number of words in the window, and a line of metrics if -metrics was
+		  * given.
+		  */
+		public void printSnapshot() {
+			next_time = System.nanoTime() + interval_nanos;
+			metrics.addTokens(n - reported_n);
+			reported_n = n;
+			metrics.observeEntries(words.size());
+			long stage = metrics.startStage();
+			if (window == null) {
+				long total = tokenizer == null ? n : n + tokenizer.getDroppedCount();
+				System.out.println("--- " + total + " words, " + words.size() + " distinct ---");
+				new WordFreqs().printRanked(top.snapshot(), total);
+			} else {
+				long window_n = window.getWindowTokenCount();
+				System.out.println("--- " + n + " words, last " + window_n + " words, "
+				+ window.size() + " distinct ---");
+				new WordFreqs().printRanked(new TopKSelector(k).select(window), window_n);
+			}
+			System.out.flush();
+			metrics.endStage("snapshot", stage);
+			if (metrics_output != null) {
+				metrics.write(metrics_output);
+			}
+		}
+	}
+	
+	/** Counts words as they arrive on standard input or in a file that keeps growing,
+	  * printing a snapshot of the top words as it goes and once more at the end of the
+	  * input.
+	  */
+	private static void countStreaming(WordFreqsOptions options) {
+		Metrics metrics = new Metrics();
+		InputStream input = System.in;
+		if (options.getInputPath() != null) {
+			try {
+				if (options.isFollowing()) {
+					input = new FollowInputStream(options.getInputPath());
+				} else {
+					input = new FileInputStream(options.getInputPath());
+				}
+			} catch (IOException e) {
+				System.err.println("File Not Found");
+				System.exit(1);
+			}
+		}
+		WindowedCounter window = null;
+		if (options.getWindowWords() > 0) {
+			window = WindowedCounter.overWords(options.getWindowWords());
+		} else if (options.getWindowSeconds() > 0) {
+			window = WindowedCounter.overSeconds(options.getWindowSeconds());
+		}
+		Tokenizer tokenizer = new Tokenizer(openFilter(options, metrics), options.isUnicode());
+		SnapshotCounter counter = new SnapshotCounter(options.getTopK(), options.getSnapshotWords(),
+		options.getSnapshotSeconds(), window, metrics, openMetrics(options),
+		options.isCountingKept() ? null : tokenizer);
+		try {
+			Reader reader = metrics.timeReads(new InputStreamReader(metrics.countBytes(input), StandardCharsets.UTF_8));
+			tokenizer.tokenize(reader, counter);
+			input.close();
+		} catch (IOException e) {
+			System.err.println("Error reading input");
+			System.exit(1);
+		}
+		counter.printSnapshot();
+	}
+	
+	/** Counts the words of a file approximately in the memory budget of -approx and
+	  * prints the most frequent ones. The largest possible overcount goes to standard
+	  * error so the ranked output keeps its usual format.
+	  */
+	private static void countApproximate(WordFreqsOptions options, InputStream input, Metrics metrics) {
+		final HeavyHitters hitters = HeavyHitters.withMemory(options.getMemoryBytes());
+		Tokenizer tokenizer = new Tokenizer(openFilter(options, metrics), options.isUnicode());
+		long n = 0;
+		try {
+			Reader reader = metrics.timeReads(new InputStreamReader(metrics.countBytes(input), StandardCharsets.UTF_8));
+			long stage = metrics.startStage();
+			tokenizer.tokenize(reader, metrics.sampleCounting(new TokenConsumer() {
+				public void accept(char[] chars, int start, int length) {
+					hitters.increment(new String(chars, start, length));
+				}
+			}));
+			metrics.endStage("scan", stage);
+			n = wordsFound(options, tokenizer);
+			input.close();
+		} catch (IOException e) {
+			System.err.println("Error reading file");
+			System.exit(1);
+		}
+		if (n == 0) {
+			System.out.println("File contains no text");
+			System.exit(0);
+		}
+		long stage = metrics.startStage();
+		ArrayList<DictPair<String, Integer>> ranked = hitters.top(options.getTopK());
+		metrics.endStage("select", stage);
+		stage = metrics.startStage();
+		new WordFreqs().printRanked(ranked, n);
+		metrics.endStage("print", stage);
+		System.err.println("Approximate counts: each may be over by at most " + hitters.getMaxError()
+		+ " (probability " + (1 - hitters.getSketch().getDelta()) + ")");
+		writeMetrics(options, metrics);
+	}
+	
+	/** Counts the runs of n consecutive words of the input and prints the most
+	  * frequent, normalized by the number of n-grams. N-grams are keyed by their
+	  * word IDs while counting and only the printed ones become Strings. With a
+	  * filter, n-grams are runs of the kept words.
+	  */
+	private static void countNGrams(WordFreqsOptions options, FileInputStream input, Metrics metrics) {
+		NGramCounter grams = null;
+		WordFilter filter = openFilter(options, metrics);
+		try {
+			long stage = metrics.startStage();
+			int expected_words = VocabularyEstimator.estimateDistinctWords(input.getChannel());
+			metrics.endStage("estimate", stage);
+			grams = new NGramCounter(options.getNGram(), new SymbolTable(expected_words));
+			metrics.setTable(grams);
+			Reader reader = metrics.timeReads(new InputStreamReader(metrics.countBytes(input),
+			StandardCharsets.UTF_8));
+			stage = metrics.startStage();
+			new Tokenizer(filter, options.isUnicode()).tokenize(reader, metrics.sampleCounting(grams));
+			metrics.endStage("scan", stage);
+			input.close();
+		} catch (IOException e) {
+			System.err.println("Error reading file");
+			System.exit(1);
+		}
+		long n = grams.getGramCount();
+		if (n == 0) {
+			System.out.println("File contains fewer than " + options.getNGram() + " words");
+			System.exit(0);
+		}
+		if (options.getSavePath() != null) {
+			try {
+				long stage = metrics.startStage();
+				FrequencyIndex.save(grams.toDictionary(), n, options.getSavePath());
+				metrics.endStage("save", stage);
+			} catch (IOException e) {
+				System.err.println("Error writing index: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		long stage = metrics.startStage();
+		ArrayList<DictPair<String, Integer>> ranked = grams.top(options.getTopK());
+		metrics.endStage("select", stage);
+		stage = metrics.startStage();
+		new WordFreqs().printRanked(ranked, n);
+		metrics.endStage("print", stage);
+		writeMetrics(options, metrics);
+	}
+	
+	/** Counts many files, directories or globs on a pool of workers and prints the top
+	  * words of all of them, after the top words of each file if -per-file was given.
+	  * Throughput goes to standard error so the ranked output keeps its usual format.
+	  */
+	private static void countBatch(WordFreqsOptions options) {
+		Metrics metrics = new Metrics();
+		int per_file_k = options.isPerFile() ? options.getTopK() : -1;
+		BatchWordCounter counter = new BatchWordCounter(options.getBatchWorkers(), per_file_k);
+		ArrayList<BatchWordCounter.FileCount> per_file = null;
+		if (options.isPerFile()) {
+			per_file = new ArrayList<BatchWordCounter.FileCount>();
+		}
+		CounterDictionary words = null;
+		try {
+			long stage = metrics.startStage();
+			ArrayList<Path> files = BatchWordCounter.expand(options.getInputPaths());
+			metrics.endStage("expand", stage);
+			stage = metrics.startStage();
+			words = counter.countFiles(files, per_file);
+			metrics.endStage("scan", stage);
+		} catch (IOException e) {
+			System.err.println("Error reading files: " + e.getMessage());
+			System.exit(1);
+		}
+		WordFreqs frequency = new WordFreqs();
+		if (per_file != null) {
+			for (int i = 0; i < per_file.size(); i++) {
+				BatchWordCounter.FileCount file = per_file.get(i);
+				System.out.println("== " + file.getPath() + " (" + file.getTokenCount() + " words) ==");
+				if (file.getTokenCount() > 0) {
+					frequency.printRanked(file.getTop(), file.getTokenCount());
+				}
 			}
+			System.out.println("== all files (" + counter.getTokenCount() + " words) ==");
+		}
+		long n = counter.getTokenCount();
+		metrics.addTokens(n);
+		metrics.addBytes(counter.getByteCount());
+		if (words instanceof InstrumentedTable) {
+			metrics.setTable((InstrumentedTable) words);
+		}
+		if (n == 0) {
+			System.out.println("File contains no text");
 		} else {
-			int counter_2 = 0;
-			for (int i = (sorted_array.length - 1); i > (sorted_array.length - 21); i--) {
-				top_20_array[counter_2] = sorted_array[i];
-				counter_2++;
+			frequency.printSelected(words, n, options.getTopK(), metrics);
+		}
+		double seconds = counter.getElapsedNanos() / 1e9;
+		System.err.println(String.format("Counted %d files, %d bytes in %.3f s: %.1f files/s, %.1f MB/s",
+		counter.getFileCount(), counter.getByteCount(), seconds, counter.getFileCount() / seconds,
+		counter.getByteCount() / seconds / (1024 * 1024)));
+		if (options.getSavePath() != null && n > 0) {
+			try {
+				long stage = metrics.startStage();
+				FrequencyIndex.save(words, n, options.getSavePath());
+				metrics.endStage("save", stage);
+			} catch (IOException e) {
+				System.err.println("Error writing index: " + e.getMessage());
+				System.exit(1);
 			}
 		}
-		
-		/** Prints the 20 most frequently used words and normalized frequencies. */
+		writeMetrics(options, metrics);
+	}
+	
+	/** Counts one or more inputs with reading, tokenizing and counting running as
+	  * concurrent stages, then prints the top words of all of them.
+	  */
+	private static void countPipeline(WordFreqsOptions options) {
+		Metrics metrics = new Metrics();
+		int workers = options.getBatchWorkers();
+		PipelineWordCounter counter = new PipelineWordCounter(workers, workers, openFilter(options, metrics),
+		options.isUnicode());
+		String[] paths = options.getInputPaths();
+		InputStream[] inputs = new InputStream[paths.length];
+		CounterDictionary words = null;
+		try {
+			for (int i = 0; i < paths.length; i++) {
+				/** The inputs are read on their own threads, so their sizes are
+				  * added here rather than counted as they are read.
+				  */
+				if (paths[i].equals("-")) {
+					inputs[i] = System.in;
+				} else {
+					inputs[i] = new FileInputStream(paths[i]);
+					metrics.addBytes(new File(paths[i]).length());
+				}
+			}
+			long stage = metrics.startStage();
+			words = counter.count(inputs);
+			metrics.endStage("scan", stage);
+		} catch (IOException e) {
+			System.err.println("Error reading files: " + e.getMessage());
+			System.exit(1);
+		}
+		long n = options.isCountingKept() ? counter.getKeptCount() : counter.getTokenCount();
+		metrics.addTokens(counter.getKeptCount());
+		if (words instanceof InstrumentedTable) {
+			metrics.setTable((InstrumentedTable) words);
+		}
+		if (n == 0) {
+			System.out.println("File contains no text");
+		} else {
+			new WordFreqs().printSelected(words, n, options.getTopK(), metrics);
+		}
+		if (options.getSavePath() != null && n > 0) {
+			try {
+				long stage = metrics.startStage();
+				FrequencyIndex.save(words, n, options.getSavePath());
+				metrics.endStage("save", stage);
+			} catch (IOException e) {
+				System.err.println("Error writing index: " + e.getMessage());
+				System.exit(1);
+			}
+		}
+		writeMetrics(options, metrics);
+	}
+	
+	/** Counts one or more inputs in -shards worker processes, each holding the words
+	  * of one hash shard, then prints the top words of all of them, read from the
+	  * shard files one entry at a time. The shard files are deleted at the end unless
+	  * -shard-dir was given.
+	  */
+	private static void countSharded(WordFreqsOptions options) {
+		Metrics metrics = new Metrics();
+		WordFilter filter = openFilter(options, metrics);
+		File directory = null;
+		ShardedWordCounter counter = null;
+		ArrayList<DictPair<String, Integer>> ranked = null;
+		long n = 0;
+		boolean failed = false;
+		try {
+			if (options.getShardDirectory() == null) {
+				directory = Files.createTempDirectory("wordfreqs-shards").toFile();
+			} else {
+				directory = new File(options.getShardDirectory());
+				directory.mkdirs();
+			}
+			counter = new ShardedWordCounter(options.getShards(), directory, filter, options.isUnicode(),
+			options.getShardMegabytes());
+			String[] paths = options.getInputPaths();
+			InputStream[] inputs = new InputStream[paths.length];
+			for (int i = 0; i < paths.length; i++) {
+				inputs[i] = paths[i].equals("-") ? System.in : new FileInputStream(paths[i]);
+				inputs[i] = metrics.countBytes(inputs[i]);
+			}
+			long stage = metrics.startStage();
+			counter.count(inputs);
+			metrics.endStage("scan", stage);
+			n = options.isCountingKept() ? counter.getKeptCount() : counter.getTokenCount();
+			metrics.addTokens(counter.getKeptCount());
+			if (n > 0) {
+				stage = metrics.startStage();
+				ranked = counter.top(options.getTopK());
+				metrics.endStage("select", stage);
+				if (options.getSavePath() != null) {
+					stage = metrics.startStage();
+					counter.save(options.getSavePath(), n);
+					metrics.endStage("save", stage);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Error counting shards: " + e.getMessage());
+			failed = true;
+		}
+		if (counter != null && options.getShardDirectory() == null) {
+			counter.deleteShards();
+		}
+		if (failed) {
+			System.exit(1);
+		}
+		if (n == 0) {
+			System.out.println("File contains no text");
+		} else {
+			long stage = metrics.startStage();
+			new WordFreqs().printRanked(ranked, n);
+			metrics.endStage("print", stage);
+		}
+		writeMetrics(options, metrics);
+	}
+	
+	/** Compares the vocabularies of files, directories or globs. Every file is counted
+	  * over one shared symbol table, so their key sets are sorted arrays of the same
+	  * IDs and each comparison is a merge of two int arrays.
+	  */
+	private static void compareVocabularies(WordFreqsOptions options) {
+		Metrics metrics = new Metrics();
+		SymbolTable symbols = new SymbolTable();
+		WordFilter filter = openFilter(options, metrics);
+		ArrayList<Path> files = null;
+		ArrayList<SymbolSet> vocabularies = new ArrayList<SymbolSet>();
+		long stage = metrics.startStage();
+		try {
+			files = BatchWordCounter.expand(options.getInputPaths());
+			for (int i = 0; i < files.size(); i++) {
+				SymbolCounter counts = new SymbolCounter(symbols);
+				InputStream input = metrics.countBytes(new FileInputStream(files.get(i).toFile()));
+				long n = new Tokenizer(filter, options.isUnicode()).tokenize(new InputStreamReader(input, StandardCharsets.UTF_8), counts);
+				input.close();
+				metrics.addTokens(n);
+				SymbolSet vocabulary = (SymbolSet) counts.getKeySet();
+				vocabularies.add(vocabulary);
+				System.out.println("== " + files.get(i) + ": " + n + " words, " + vocabulary.size() + " distinct ==");
+			}
+		} catch (IOException e) {
+			System.err.println("Error reading files: " + e.getMessage());
+			System.exit(1);
+		}
+		metrics.endStage("scan", stage);
+		if (files.size() < 2) {
+			System.err.println("-compare needs at least two files");
+			System.exit(1);
+		}
+		stage = metrics.startStage();
+		DecimalFormat second_place = new DecimalFormat("0.00");
+		for (int i = 0; i < vocabularies.size(); i++) {
+			SymbolSet first = vocabularies.get(i);
+			for (int j = i + 1; j < vocabularies.size(); j++) {
+				SymbolSet second = vocabularies.get(j);
+				int shared = first.intersectSize(second);
+				int either = first.size() + second.size() - shared;
+				double similarity = either == 0 ? 1 : shared / (double) either;
+				System.out.println(files.get(i) + " | " + files.get(j) + ": " + shared + " shared, "
+				+ (first.size() - shared) + " only in first, " + (second.size() - shared)
+				+ " only in second, Jaccard " + second_place.format(similarity));
+			}
+		}
+		Set<String> all = vocabularies.get(0);
+		Set<String> every = vocabularies.get(0);
+		for (int i = 1; i < vocabularies.size(); i++) {
+			all = all.union(vocabularies.get(i));
+			every = every.intersect(vocabularies.get(i));
+		}
+		System.out.println("All files: " + all.size() + " distinct, " + every.size() + " in every file");
+		metrics.endStage("compare", stage);
+		writeMetrics(options, metrics);
+	}
+	
+	/** Prints the most frequent words of saved indexes, merging them first into a new
+	  * index if -merge was given. The indexes are read entry by entry, so only the
+	  * selected words are ever held in memory.
+	  */
+	private static void printIndexes(WordFreqsOptions options) {
+		Metrics metrics = new Metrics();
+		long stage = metrics.startStage();
+		String[] paths = options.getInputPaths();
+		FrequencyIndex[] indexes = null;
+		try {
+			if (options.getMergePath() != null) {
+				FrequencyIndex.merge(paths, options.getMergePath());
+				paths = new String[] {options.getMergePath()};
+				metrics.endStage("merge", stage);
+			}
+			indexes = FrequencyIndex.openAll(paths);
+		} catch (IOException e) {
+			System.err.println("Error reading index: " + e.getMessage());
+			System.exit(1);
+		} catch (ArithmeticException e) {
+			System.err.println("Error merging indexes: a word's total count does not fit in an int");
+			System.exit(1);
+		}
+		FrequencyIndex.MergedCursor cursor = new FrequencyIndex.MergedCursor(indexes);
+		long n = cursor.getTokenCount();
+		if (n == 0) {
+			System.out.println("File contains no text");
+			System.exit(0);
+		}
+		int k = options.getTopK();
+		TopKSelector selector = k == 0 ? new TopKSelector() : new TopKSelector(k);
+		stage = metrics.startStage();
+		while (cursor.next()) {
+			if (selector.accepts(cursor.getCount())) {
+				selector.offer(cursor.getWord(), cursor.getCount());
+			}
+		}
+		try {
+			FrequencyIndex.closeAll(indexes);
+		} catch (IOException e) {
+			System.err.println("Error reading index: " + e.getMessage());
+			System.exit(1);
+		}
+		ArrayList<DictPair<String, Integer>> ranked = selector.result();
+		metrics.endStage("select", stage);
+		metrics.addTokens(n);
+		stage = metrics.startStage();
+		new WordFreqs().printRanked(ranked, n);
+		metrics.endStage("print", stage);
+		writeMetrics(options, metrics);
+	}
+	
+	/** Opens where -metrics writes to: standard error for "-", otherwise a file. Returns
+	  * null if -metrics was not given.
+	  */
+	private static PrintStream openMetrics(WordFreqsOptions options) {
+		String path = options.getMetricsPath();
+		if (path == null) {
+			return null;
+		}
+		if (path.equals("-")) {
+			return System.err;
+		}
+		try {
+			return new PrintStream(new FileOutputStream(path), true, "UTF-8");
+		} catch (IOException e) {
+			System.err.println("Error writing metrics: " + e.getMessage());
+			System.exit(1);
+			return null;
+		}
+	}
+	
+	/** Compiles the -allow and -stop word lists.
+	  * @return The filter, or null if neither list was given.
+	  */
+	private static WordFilter openFilter(WordFreqsOptions options, Metrics metrics) {
+		long stage = metrics.startStage();
+		WordFilter filter = null;
+		try {
+			filter = WordFilter.load(options.getAllowPath(), options.getStopPath(), options.isUnicode());
+		} catch (IOException e) {
+			System.err.println("Error reading word list: " + e.getMessage());
+			System.exit(1);
+		}
+		if (filter != null) {
+			metrics.endStage("filter", stage);
+		}
+		return filter;
+	}
+	
+	/** Gets the number of words frequencies are divided by: every word the tokenizer
+	  * found, or with -n kept only the words the filter kept.
+	  */
+	private static long wordsFound(WordFreqsOptions options, Tokenizer tokenizer) {
+		return options.isCountingKept() ? tokenizer.getKeptCount() : tokenizer.getTokenCount();
+	}
+	
+	/** Writes the summary of a finished run if -metrics was given. */
+	private static void writeMetrics(WordFreqsOptions options, Metrics metrics) {
+		PrintStream output = openMetrics(options);
+		if (output != null) {
+			metrics.write(output);
+			if (output != System.err) {
+				output.close();
+			}
+		}
+	}
+	
+	/** Takes a dictionary of words and number of times each word is used in a text file
+	  * and prints the 20 most frequently used words.
+	  */
+	public void printTopTwenty(Dictionary<String, Integer> d, int n) {
+		printTopK(d, n, 20);
+	}
+	
+	/** Takes a dictionary of words and number of times each word is used in a text file
+	  * and prints the k most frequently used words, or every word if k is 0.
+	  */
+	public void printTopK(Dictionary<String, Integer> d, long n, int k) {
+		TopKSelector selector = null;
+		if (k > 0) {
+			selector = new TopKSelector(k);
+		} else {
+			selector = new TopKSelector();
+		}
+		printRanked(selector.select(d), n);
+	}
+	
+	/** Selects and prints the top k words like printTopK, timing the selection and
+	  * the printing as separate stages.
+	  */
+	private void printSelected(Dictionary<String, Integer> d, long n, int k, Metrics metrics) {
+		long stage = metrics.startStage();
+		TopKSelector selector = k > 0 ? new TopKSelector(k) : new TopKSelector();
+		ArrayList<DictPair<String, Integer>> ranked = selector.select(d);
+		metrics.endStage("select", stage);
+		stage = metrics.startStage();
+		printRanked(ranked, n);
+		metrics.endStage("print", stage);
+	}
+	
+	/** Prints ranked entries and their frequencies normalized by n. */
+	public void printRanked(ArrayList<DictPair<String, Integer>> ranked, long n) {
+		DecimalFormat second_place = new DecimalFormat("0.00");
 		int k = 1;
-		for (int i = 0; i < top_20_array.length; i++) {
-			@SuppressWarnings("unchecked")
-			DictPair<String, Integer> sorted_pair =
-			(DictPair<String, Integer>) top_20_array[i];
+		for (int i = 0; i < ranked.size(); i++) {
+			DictPair<String, Integer> sorted_pair = ranked.get(i);
 			String sorted_key = sorted_pair.getKey();
 			double sorted_value = sorted_pair.getValue() / (double) n;
-    		DecimalFormat second_place = new DecimalFormat("0.00");
-    		double print_value = Double.parseDouble(second_place.format(sorted_value));
+			double print_value = Double.parseDouble(second_place.format(sorted_value));
 			System.out.println
 			(k + ". " + sorted_key + " - " + print_value);
 			k++;
 		}
-	}			
-	
-	/** sorts an array of DictPairs by numerical values. */
-	private Object[] insertionSort(Object[] a, int first, int last) {
-		for (int i = first; i < last; i++) {
-			@SuppressWarnings("unchecked")
-			DictPair<String, Integer> next_pair = (DictPair<String, Integer>) a[i];
-			insertInOrder(next_pair, a, first, i - 1);
-		}
-		return a;
-	}
-	private void insertInOrder(DictPair<String, Integer> entry,
-							   Object[] array, int begin, int end) {
-		boolean sorted = false;
-		int index = end;
-		while (!sorted) {
-			@SuppressWarnings("unchecked")
-			DictPair<String, Integer> end_pair = (DictPair<String, Integer>) array[index];
-			if ((index >= begin) && (entry.getValue() < end_pair.getValue())) {
-				array[index + 1] = array[index];
-				index--;
-			} else {
-				array[index + 1] = entry;
-				sorted = true;
-			}
-		}
 	}
 	
-	/** Takes a text file and prints the 20 most frequently used words from that text
-	  * file.
+	/** Takes a text file and prints the 20 (or -k count, or -all) most frequently used
+	  * words from that text file.
 	  */
 	 public static void main(String[] args) {
-	 	Dictionary<String, Integer> words = new HashDictionaryImplementation<String, Integer>();
-		ArrayList<String> words_list = new ArrayList<String>();
 		
-		String get_words = args[0];
+		WordFreqsOptions options = null;
+		try {
+			options = WordFreqsOptions.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(WordFreqsOptions.USAGE);
+			System.exit(1);
+		}
+		/** Words from -unicode runs, and indexes saved by them, may be in any script, so
+		  * output is UTF-8, the encoding input is read in, whatever the platform's
+		  * default charset is. ASCII output is unchanged.
+		  */
+		System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), true,
+		StandardCharsets.UTF_8));
+		if (options.isStreaming()) {
+			countStreaming(options);
+			return;
+		}
+		if (options.isBatch()) {
+			countBatch(options);
+			return;
+		}
+		if (options.isPipeline()) {
+			countPipeline(options);
+			return;
+		}
+		if (options.getShards() > 0) {
+			countSharded(options);
+			return;
+		}
+		if (options.isComparing()) {
+			compareVocabularies(options);
+			return;
+		}
+		if (options.isLoading() || options.getMergePath() != null) {
+			printIndexes(options);
+			return;
+		}
+		
+		Metrics metrics = new Metrics();
+		String get_words = options.getInputPath();
 		File input_words = new File(get_words);
 		
-		Scanner scanner = null;
+		FileInputStream input_stream = null;
 		try {
-            scanner = new Scanner(input_words);
+            input_stream = new FileInputStream(input_words);
         } catch (FileNotFoundException e) {
             System.err.println("File Not Found");
             System.exit(1);
-        } while (scanner.hasNext()) {
-        	/** Gets rid of punctuation and puts words from text file
-        	  * into a list.
-        	  */
-        	String word = scanner.next();
-        	if (word.contains("'")) {
-        		word = word.replace("'", " ");
-        	}
-        	if (word.contains("-")) {
-        		word = word.replace("-", " ");
+        }
+        if (options.isApproximate()) {
+        	countApproximate(options, input_stream, metrics);
+        	return;
+        }
+        if (options.getNGram() > 0) {
+        	countNGrams(options, input_stream, metrics);
+        	return;
+        }
+        
+        /** Splits the text into words and adds every word to the dictionary as
+          * soon as it is found.
+          */
+        Dictionary<String, Integer> words = null;
+        long n = 0;
+        Tokenizer tokenizer = new Tokenizer(openFilter(options, metrics), options.isUnicode());
+        try {
+        	if (options.getThreads() > 1) {
+        		ParallelWordCounter counter = new ParallelWordCounter(options.getThreads());
+        		long stage = metrics.startStage();
+        		words = counter.countFile(input_stream.getChannel());
+        		metrics.endStage("scan", stage);
+        		n = counter.getTokenCount();
+        		metrics.addTokens(n);
+        		metrics.addBytes(input_stream.getChannel().size());
+        		if (words instanceof InstrumentedTable) {
+        			metrics.setTable((InstrumentedTable) words);
+        		}
+        	} else if (options.isMapped()) {
+        		long stage = metrics.startStage();
+        		int expected_words = VocabularyEstimator.estimateDistinctWords(input_stream.getChannel());
+        		metrics.endStage("estimate", stage);
+        		MappedWordCounter counter = new MappedWordCounter(expected_words);
+        		metrics.setTable(counter.getSymbols());
+        		stage = metrics.startStage();
+        		n = counter.countFile(input_stream.getChannel());
+        		metrics.endStage("scan", stage);
+        		metrics.addTokens(n);
+        		metrics.addBytes(input_stream.getChannel().size());
+        		stage = metrics.startStage();
+        		words = counter.toDictionary();
+        		metrics.endStage("to_dictionary", stage);
+        	} else if (options.getOffHeapBytes() > 0) {
+        		/** Keeps the words in native memory, so the vocabulary is limited by
+        		  * -offheap rather than by the heap.
+        		  */
+        		long stage = metrics.startStage();
+        		int expected_words = VocabularyEstimator.estimateDistinctWords(input_stream.getChannel());
+        		metrics.endStage("estimate", stage);
+        		OffHeapCounterDictionary counts = new OffHeapCounterDictionary(options.getOffHeapBytes(),
+        		expected_words);
+        		metrics.setTable(counts);
+        		Reader reader = metrics.timeReads(new InputStreamReader(metrics.countBytes(input_stream),
+        		StandardCharsets.UTF_8));
+        		stage = metrics.startStage();
+        		tokenizer.tokenize(reader, metrics.sampleCounting(counts));
+        		metrics.endStage("scan", stage);
+        		n = wordsFound(options, tokenizer);
+        		words = counts;
+        	} else {
+        		/** Presizes the symbol table so it does not rehash while counting. Words
+        		  * are counted by ID, so only the first occurrence of a word creates a String.
+        		  */
+        		long stage = metrics.startStage();
+        		int expected_words = VocabularyEstimator.estimateDistinctWords(input_stream.getChannel());
+        		metrics.endStage("estimate", stage);
+        		SymbolCounter counts = new SymbolCounter(expected_words);
+        		metrics.setTable(counts);
+        		Reader reader = metrics.timeReads(new InputStreamReader(metrics.countBytes(input_stream),
+        		StandardCharsets.UTF_8));
+        		stage = metrics.startStage();
+        		tokenizer.tokenize(reader, metrics.sampleCounting(counts));
+        		metrics.endStage("scan", stage);
+        		n = wordsFound(options, tokenizer);
+        		words = counts;
         	}
-        	word = word.replaceAll("[^a-zA-Z ]", "").toLowerCase();
-        	words_list.add(word);
+        	input_stream.close();
+        } catch (IOException e) {
+        	System.err.println("Error reading file");
+        	System.exit(1);
+        } catch (IllegalStateException e) {
+        	System.err.println(e.getMessage());
+        	System.exit(1);
         }
         
         /** Checks if text file is empty. */
-        if (words_list.isEmpty()) {
+        if (n == 0) {
         	System.out.println("File contains no text");
         	System.exit(0);
         }
-        
-        /** Separates words with apostrophes into two separate words. */
-		for (int i = 0; i < words_list.size(); i++) {
-			if (words_list.get(i).contains(" ")) {
-				String[] split_words = words_list.get(i).split(" ");
-				String word_1 = null;
-				String word_2 = null;
-				words_list.remove(i);
-				/** Checks if there are letters on both sides of the split. */
-				if (split_words.length > 0) {
-					word_1 = split_words[0];
-					if (!word_1.equals("") && !word_1.equals(" ")) {
-						words_list.add(word_1);
-					}
-				}
-				if (split_words.length > 1) {
-					word_2 = split_words[1];
-					if (!word_2.equals("") && !word_2.equals(" ")) {
-						words_list.add(word_2);
-					}
-				}
-			}
-		}
-		
-		/** Adds all words from list to dictionary. */
-        for (int i = 0; i < words_list.size(); i++) {
-        	String word = words_list.get(i);
-			if (!words.contains(word)) {
-				words.add(word, 1);
-			} else {
-				int counter = words.getValue(word);
-				counter++;
-				words.add(word, counter);
-			}
-		}
+        if (options.getSavePath() != null) {
+        	try {
+        		long stage = metrics.startStage();
+        		FrequencyIndex.save(words, n, options.getSavePath());
+        		metrics.endStage("save", stage);
+        	} catch (IOException e) {
+        		System.err.println("Error writing index: " + e.getMessage());
+        		System.exit(1);
+        	}
+        }
         WordFreqs frequency = new WordFreqs();
-        frequency.printTopTwenty(words, words_list.size());
+        frequency.printSelected(words, n, options.getTopK(), metrics);
+        writeMetrics(options, metrics);
+        if (words instanceof OffHeapCounterDictionary) {
+        	((OffHeapCounterDictionary) words).close();
+        }
     }
 }
@@ -0,0 +1,568 @@
+import java.io.CharArrayReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+  * WordFreqsBenchmark
+  * Measures the stages of WordFreqs at several vocabulary sizes: the dictionary
+  * operations (add, getValue, contains and the counter's increment) under uniform and
+  * Zipfian key distributions, tokenizing in ASCII and Unicode mode, the tokenizing
+  * and counting path with and without Metrics or a stop list, n-gram counting,
+  * vocabulary intersection and top-K selection.
+  * Each benchmark runs a number of warmup iterations and then measured iterations,
+  * and the results are written as JSON in the layout JMH uses for its own results,
+  * so runs of different versions can be compared for regressions. Like JMH's gc
+  * profiler, each result also reports the bytes allocated per operation and the
+  * number and total time of the garbage collections during the measured iterations.
+  *     java -Xmx8g WordFreqsBenchmark [-sizes 10000,1000000,10000000]
+  *         [-warmup count] [-iterations count] [-out file.json]
+  */
+
+public class WordFreqsBenchmark {
+	private static final String DEFAULT_SIZES = "10000,1000000,10000000";
+	private static final int DEFAULT_WARMUP = 2;
+	private static final int DEFAULT_ITERATIONS = 5;
+	private static final String DEFAULT_OUTPUT = "benchmark-results.json";
+	/** Smallest number of operations in one iteration, so small sizes still measure
+	  * long enough to be stable.
+	  */
+	private static final int MIN_OPERATIONS = 1000000;
+
+	/** One measured operation. run() performs a batch of operations and returns how
+	  * many it performed.
+	  */
+	private static abstract class Benchmark {
+		private String name;
+
+		public Benchmark(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/** Prepares the state used by every iteration. */
+		public void setUp() {
+		}
+
+		/** Runs one iteration and returns the number of operations performed. */
+		public abstract long run();
+	}
+
+	/** Adds up the lengths of the words it is given, so tokenizing can be measured
+	  * without counting.
+	  */
+	private static class LengthSum implements TokenConsumer {
+		private long total;
+
+		public void accept(char[] chars, int start, int length) {
+			total += length;
+		}
+	}
+
+	/** The keys and the order they are used in, for one size and distribution. */
+	private static class Workload {
+		private String size;
+		private String distribution;
+		private String[] keys;
+		private int[] sequence;
+		private char[] text;
+
+		public Workload(int distinct, String distribution, long seed) {
+			this.size = Integer.toString(distinct);
+			this.distribution = distribution;
+			keys = new String[distinct];
+			for (int i = 0; i < distinct; i++) {
+				keys[i] = wordFor(i);
+			}
+			Random random = new Random(seed);
+			sequence = new int[Math.max(distinct, MIN_OPERATIONS)];
+			for (int i = 0; i < sequence.length; i++) {
+				if (distribution.equals("zipfian")) {
+					sequence[i] = zipfian(random, distinct);
+				} else {
+					sequence[i] = random.nextInt(distinct);
+				}
+			}
+		}
+
+		/** Returns the workload's keys in sequence order, separated by spaces. */
+		public char[] getText() {
+			if (text == null) {
+				StringBuilder builder = new StringBuilder();
+				for (int i = 0; i < sequence.length; i++) {
+					builder.append(keys[sequence[i]]).append(' ');
+				}
+				text = builder.toString().toCharArray();
+			}
+			return text;
+		}
+	}
+
+	/** Returns a distinct lowercase word for every index, so the words survive
+	  * the tokenizer unchanged.
+	  */
+	private static String wordFor(int index) {
+		StringBuilder word = new StringBuilder();
+		int rest = index;
+		do {
+			word.append((char) ('a' + rest % 26));
+			rest /= 26;
+		} while (rest > 0);
+		return word.toString();
+	}
+
+	/** Returns a rank in [0, n) with probability roughly proportional to 1 / (rank + 1),
+	  * the Zipf distribution of word frequencies in natural text.
+	  */
+	private static int zipfian(Random random, int n) {
+		int rank = (int) Math.exp(random.nextDouble() * Math.log(n + 1)) - 1;
+		return Math.min(rank, n - 1);
+	}
+
+	/** Fills a counter dictionary from the workload's sequence. */
+	private static OpenHashCounterDictionary countWorkload(Workload workload) {
+		OpenHashCounterDictionary counts = new OpenHashCounterDictionary();
+		for (int i = 0; i < workload.sequence.length; i++) {
+			counts.increment(workload.keys[workload.sequence[i]]);
+		}
+		return counts;
+	}
+
+	/** Returns the benchmarks for one workload. */
+	private static ArrayList<Benchmark> benchmarksFor(final Workload workload) {
+		ArrayList<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		final String[] keys = workload.keys;
+		final int[] sequence = workload.sequence;
+
+		benchmarks.add(new Benchmark("HashDictionaryImplementation.add") {
+			public long run() {
+				Dictionary<String, Integer> words = new HashDictionaryImplementation<String, Integer>();
+				for (int i = 0; i < sequence.length; i++) {
+					words.add(keys[sequence[i]], i);
+				}
+				return sequence.length;
+			}
+		});
+		benchmarks.add(new Benchmark("HashDictionaryImplementation.getValue") {
+			private Dictionary<String, Integer> words;
+			public void setUp() {
+				words = new HashDictionaryImplementation<String, Integer>();
+				for (int i = 0; i < keys.length; i++) {
+					words.add(keys[i], i);
+				}
+			}
+			public long run() {
+				long sum = 0;
+				for (int i = 0; i < sequence.length; i++) {
+					sum += words.getValue(keys[sequence[i]]);
+				}
+				consume(sum);
+				return sequence.length;
+			}
+		});
+		benchmarks.add(new Benchmark("HashDictionaryImplementation.contains") {
+			private Dictionary<String, Integer> words;
+			public void setUp() {
+				words = new HashDictionaryImplementation<String, Integer>();
+				for (int i = 0; i < keys.length; i += 2) {
+					words.add(keys[i], i);
+				}
+			}
+			public long run() {
+				long found = 0;
+				for (int i = 0; i < sequence.length; i++) {
+					if (words.contains(keys[sequence[i]])) {
+						found++;
+					}
+				}
+				consume(found);
+				return sequence.length;
+			}
+		});
+		benchmarks.add(new Benchmark("OpenHashCounterDictionary.increment") {
+			public long run() {
+				consume(countWorkload(workload).size());
+				return sequence.length;
+			}
+		});
+		benchmarks.add(new Benchmark("Tokenizer.tokenizeAndCount") {
+			public void setUp() {
+				workload.getText();
+			}
+			public long run() {
+				final OpenHashCounterDictionary counts = new OpenHashCounterDictionary();
+				try {
+					new Tokenizer().tokenize(new CharArrayReader(workload.getText()), new TokenConsumer() {
+						public void accept(char[] chars, int start, int length) {
+							counts.increment(new String(chars, start, length));
+						}
+					});
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				consume(counts.size());
+				return sequence.length;
+			}
+		});
+		/** Tokenizing alone, in ASCII mode and in Unicode mode on the same ASCII text,
+		  * which should cost the same, and in Unicode mode on text whose every word
+		  * starts with an accented capital and so takes the folding path.
+		  */
+		benchmarks.add(new Benchmark("Tokenizer.tokenize") {
+			public void setUp() {
+				workload.getText();
+			}
+			public long run() {
+				LengthSum lengths = new LengthSum();
+				try {
+					new Tokenizer().tokenize(new CharArrayReader(workload.getText()), lengths);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				consume(lengths.total);
+				return sequence.length;
+			}
+		});
+		benchmarks.add(new Benchmark("Tokenizer.tokenizeUnicodeAscii") {
+			public void setUp() {
+				workload.getText();
+			}
+			public long run() {
+				LengthSum lengths = new LengthSum();
+				try {
+					new Tokenizer(null, true).tokenize(new CharArrayReader(workload.getText()), lengths);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				consume(lengths.total);
+				return sequence.length;
+			}
+		});
+		benchmarks.add(new Benchmark("Tokenizer.tokenizeUnicodeAccented") {
+			private char[] text;
+			public void setUp() {
+				StringBuilder builder = new StringBuilder();
+				for (int i = 0; i < sequence.length; i++) {
+					builder.append('\u00c9').append(keys[sequence[i]]).append(' ');
+				}
+				text = builder.toString().toCharArray();
+			}
+			public long run() {
+				LengthSum lengths = new LengthSum();
+				try {
+					new Tokenizer(null, true).tokenize(new CharArrayReader(text), lengths);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				consume(lengths.total);
+				return sequence.length;
+			}
+		});
+		benchmarks.add(new Benchmark("SymbolCounter.tokenizeAndCount") {
+			public void setUp() {
+				workload.getText();
+			}
+			public long run() {
+				SymbolCounter counts = new SymbolCounter();
+				try {
+					new Tokenizer().tokenize(new CharArrayReader(workload.getText()), counts);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				consume(counts.size());
+				return sequence.length;
+			}
+		});
+		/** The same path with the 100 lowest-ranked keys as stop words, which under
+		  * Zipfian keys are about half the words, as "the", "and" and "of" are of text.
+		  */
+		benchmarks.add(new Benchmark("SymbolCounter.tokenizeAndCountStopWords") {
+			private WordFilter filter;
+			public void setUp() {
+				workload.getText();
+				filter = new WordFilter(null, new PerfectWordSet(Arrays.copyOf(keys, Math.min(100, keys.length))));
+			}
+			public long run() {
+				SymbolCounter counts = new SymbolCounter();
+				try {
+					new Tokenizer(filter).tokenize(new CharArrayReader(workload.getText()), counts);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				consume(counts.size());
+				return sequence.length;
+			}
+		});
+		benchmarks.add(new Benchmark("PerfectWordSet.contains") {
+			private PerfectWordSet stop_words;
+			private char[][] words;
+			public void setUp() {
+				stop_words = new PerfectWordSet(Arrays.copyOf(keys, Math.min(100, keys.length)));
+				words = new char[keys.length][];
+				for (int i = 0; i < keys.length; i++) {
+					words[i] = keys[i].toCharArray();
+				}
+			}
+			public long run() {
+				long found = 0;
+				for (int i = 0; i < sequence.length; i++) {
+					char[] word = words[sequence[i]];
+					if (stop_words.contains(word, 0, word.length)) {
+						found++;
+					}
+				}
+				consume(found);
+				return sequence.length;
+			}
+		});
+		for (int gram_size = 2; gram_size <= 3; gram_size++) {
+			final int n = gram_size;
+			benchmarks.add(new Benchmark("NGramCounter.tokenizeAndCount" + n) {
+				public void setUp() {
+					workload.getText();
+				}
+				public long run() {
+					NGramCounter grams = new NGramCounter(n);
+					try {
+						new Tokenizer().tokenize(new CharArrayReader(workload.getText()), grams);
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+					consume(grams.size());
+					return sequence.length;
+				}
+			});
+		}
+		benchmarks.add(new Benchmark("OffHeapCounterDictionary.tokenizeAndCount") {
+			public void setUp() {
+				workload.getText();
+			}
+			public long run() {
+				OffHeapCounterDictionary counts =
+				new OffHeapCounterDictionary(OffHeapCounterDictionary.maxDirectMemory());
+				try {
+					new Tokenizer().tokenize(new CharArrayReader(workload.getText()), counts);
+					consume(counts.size());
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				} finally {
+					counts.close();
+				}
+				return sequence.length;
+			}
+		});
+		/** The same path with Metrics wrapped around the reader and the counter, to
+		  * measure what leaving -metrics on costs.
+		  */
+		benchmarks.add(new Benchmark("SymbolCounter.tokenizeAndCountWithMetrics") {
+			public void setUp() {
+				workload.getText();
+			}
+			public long run() {
+				Metrics metrics = new Metrics();
+				SymbolCounter counts = new SymbolCounter();
+				metrics.setTable(counts);
+				try {
+					new Tokenizer().tokenize(metrics.timeReads(new CharArrayReader(workload.getText())),
+					metrics.sampleCounting(counts));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				consume(counts.size());
+				return sequence.length;
+			}
+		});
+		/** Two documents over one symbol table, the first and second halves of the
+		  * sequence, compared the way -compare does. Each operation is one intersection.
+		  */
+		benchmarks.add(new Benchmark("SymbolSet.intersectSize") {
+			private SymbolSet first;
+			private SymbolSet second;
+			public void setUp() {
+				SymbolTable symbols = new SymbolTable();
+				first = new SymbolSet(symbols);
+				second = new SymbolSet(symbols);
+				for (int i = 0; i < sequence.length; i++) {
+					(i < sequence.length / 2 ? first : second).add(keys[sequence[i]]);
+				}
+			}
+			public long run() {
+				int repeat = Math.max(1, MIN_OPERATIONS / keys.length);
+				for (int i = 0; i < repeat; i++) {
+					consume(first.intersectSize(second));
+				}
+				return repeat;
+			}
+		});
+		benchmarks.add(new Benchmark("TopKSelector.top20") {
+			private OpenHashCounterDictionary counts;
+			public void setUp() {
+				counts = countWorkload(workload);
+			}
+			public long run() {
+				consume(new TopKSelector(20).select(counts).size());
+				return counts.size();
+			}
+		});
+		benchmarks.add(new Benchmark("TopKSelector.fullSort") {
+			private OpenHashCounterDictionary counts;
+			public void setUp() {
+				counts = countWorkload(workload);
+			}
+			public long run() {
+				consume(new TopKSelector().select(counts).size());
+				return counts.size();
+			}
+		});
+		return benchmarks;
+	}
+
+	/** Keeps results alive so the JIT cannot remove the measured work. */
+	private static volatile long sink;
+	private static void consume(long value) {
+		sink += value;
+	}
+
+	/** Gets the total number of collections and the total collection time in
+	  * milliseconds of every garbage collector.
+	  */
+	private static long[] gcTotals() {
+		long[] totals = new long[2];
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		for (int i = 0; i < collectors.size(); i++) {
+			totals[0] += Math.max(0, collectors.get(i).getCollectionCount());
+			totals[1] += Math.max(0, collectors.get(i).getCollectionTime());
+		}
+		return totals;
+	}
+
+	/** Gets the bytes allocated so far by the current thread, or -1 if the JVM
+	  * cannot tell.
+	  */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/** Runs one benchmark and returns its result as a JSON object. */
+	private static String measure(Benchmark benchmark, Workload workload, int warmup, int iterations) {
+		benchmark.setUp();
+		for (int i = 0; i < warmup; i++) {
+			benchmark.run();
+		}
+		double[] scores = new double[iterations];
+		long total_operations = 0;
+		long[] gc_before = gcTotals();
+		long allocated_before = allocatedBytes();
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			long operations = benchmark.run();
+			scores[i] = (System.nanoTime() - start) / (double) operations;
+			total_operations += operations;
+		}
+		long allocated_after = allocatedBytes();
+		long[] gc_after = gcTotals();
+		long gc_count = gc_after[0] - gc_before[0];
+		long gc_time = gc_after[1] - gc_before[1];
+		double allocated_per_op = -1;
+		if (allocated_before >= 0) {
+			allocated_per_op = (allocated_after - allocated_before) / (double) total_operations;
+		}
+		double mean = 0;
+		for (int i = 0; i < iterations; i++) {
+			mean += scores[i];
+		}
+		mean /= iterations;
+		double variance = 0;
+		for (int i = 0; i < iterations; i++) {
+			variance += (scores[i] - mean) * (scores[i] - mean);
+		}
+		/** Half-width of a ~99.9% interval, as JMH reports for its scoreError. */
+		double error = 0;
+		if (iterations > 1) {
+			error = 3.29 * Math.sqrt(variance / (iterations - 1)) / Math.sqrt(iterations);
+		}
+		System.out.println(benchmark.getName() + " size=" + workload.size + " "
+		+ workload.distribution + ": " + String.format("%.2f", mean) + " ns/op, "
+		+ String.format("%.1f", allocated_per_op) + " B/op, " + gc_count + " GCs, " + gc_time + " ms GC");
+
+		StringBuilder raw = new StringBuilder();
+		for (int i = 0; i < iterations; i++) {
+			if (i > 0) {
+				raw.append(", ");
+			}
+			raw.append(scores[i]);
+		}
+		return "  {\"benchmark\": \"" + benchmark.getName() + "\", \"mode\": \"avgt\", "
+		+ "\"warmupIterations\": " + warmup + ", \"measurementIterations\": " + iterations + ", "
+		+ "\"params\": {\"size\": \"" + workload.size + "\", \"distribution\": \""
+		+ workload.distribution + "\"}, "
+		+ "\"primaryMetric\": {\"score\": " + mean + ", \"scoreError\": " + error
+		+ ", \"scoreUnit\": \"ns/op\", \"rawData\": [[" + raw + "]]}, "
+		+ "\"secondaryMetrics\": {"
+		+ "\"gc.alloc.rate.norm\": {\"score\": " + allocated_per_op + ", \"scoreUnit\": \"B/op\"}, "
+		+ "\"gc.count\": {\"score\": " + gc_count + ", \"scoreUnit\": \"counts\"}, "
+		+ "\"gc.time\": {\"score\": " + gc_time + ", \"scoreUnit\": \"ms\"}}}";
+	}
+
+	public static void main(String[] args) throws IOException {
+		String sizes = DEFAULT_SIZES;
+		int warmup = DEFAULT_WARMUP;
+		int iterations = DEFAULT_ITERATIONS;
+		String output = DEFAULT_OUTPUT;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("-sizes")) {
+				sizes = args[i + 1];
+			} else if (args[i].equals("-warmup")) {
+				warmup = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("-iterations")) {
+				iterations = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("-out")) {
+				output = args[i + 1];
+			} else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		ArrayList<String> results = new ArrayList<String>();
+		String[] distributions = {"uniform", "zipfian"};
+		String[] size_list = sizes.split(",");
+		for (int s = 0; s < size_list.length; s++) {
+			int size = Integer.parseInt(size_list[s].trim());
+			for (int d = 0; d < distributions.length; d++) {
+				Workload workload = new Workload(size, distributions[d], size + d);
+				ArrayList<Benchmark> benchmarks = benchmarksFor(workload);
+				for (int b = 0; b < benchmarks.size(); b++) {
+					results.add(measure(benchmarks.get(b), workload, warmup, iterations));
+				}
+			}
+		}
+
+		PrintWriter writer = new PrintWriter(new FileWriter(output));
+		writer.println("[");
+		for (int i = 0; i < results.size(); i++) {
+			if (i < results.size() - 1) {
+				writer.println(results.get(i) + ",");
+			} else {
+				writer.println(results.get(i));
+			}
+		}
+		writer.println("]");
+		writer.close();
+		System.out.println("Results written to " + output);
+	}
+}
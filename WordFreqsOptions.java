@@ -0,0 +1,622 @@
+import java.util.ArrayList;
+
+/**
+  * WordFreqsOptions
+  * Parses the command line of WordFreqs. Any of these also takes -metrics file (or -
+  * for standard error) to write a JSON summary of where the run spent its time:
+  *     java WordFreqs [-k count | -all] [-mmap] [-threads count] file
+  *     java WordFreqs [-k count | -all] -offheap megabytes [-save index] file
+  *     java WordFreqs [-k count | -all] -ngram n [-save index] file
+  *     java WordFreqs [-k count] -approx [-memory megabytes] file
+  *     java WordFreqs [-k count | -all] [-mmap] [-threads count] -save index file
+  *     java WordFreqs [-k count | -all] [-threads count] [-per-file] [-save index]
+  *         -batch path [path ...]
+  *     java WordFreqs [-k count | -all] [-threads count] [-save index]
+  *         -pipeline (file | -) [file ...]
+  *     java WordFreqs [-k count | -all] -shards count [-shard-memory megabytes]
+  *         [-shard-dir dir] [-save index] (file | -) [file ...]
+  *     java WordFreqs -compare path path [path ...]
+  *     java WordFreqs [-k count | -all] -load index [index ...]
+  *     java WordFreqs [-k count | -all] -merge output index [index ...]
+  *     java WordFreqs [-k count] -stream [-every words] [-interval seconds]
+  *         [-window words | -window-seconds seconds] [file | -]
+  *     java WordFreqs [-k count] -follow [-every words] [-interval seconds]
+  *         [-window words | -window-seconds seconds] file
+  * Runs that count text also take -stop file and -allow file to drop or keep only
+  * the listed words, -n all or -n kept to divide the counts by all the words or
+  * only the kept ones, and -unicode to keep the letters of every script, case
+  * folded and in NFC, except with -mmap, -batch, or -threads outside -pipeline.
+  */
+
+public class WordFreqsOptions {
+	public static final String USAGE =
+	"Usage: java WordFreqs [-k count | -all] [-mmap] [-threads count] file\n"
+	+ "       java WordFreqs [-k count | -all] -offheap megabytes [-save index] file\n"
+	+ "       java WordFreqs [-k count | -all] -ngram n [-save index] file\n"
+	+ "       java WordFreqs [-k count] -approx [-memory megabytes] file\n"
+	+ "       java WordFreqs [-k count | -all] [-mmap] [-threads count] -save index file\n"
+	+ "       java WordFreqs [-k count | -all] [-threads count] [-per-file] [-save index]\n"
+	+ "                      -batch path [path ...]\n"
+	+ "       java WordFreqs [-k count | -all] [-threads count] [-save index]\n"
+	+ "                      -pipeline (file | -) [file ...]\n"
+	+ "       java WordFreqs [-k count | -all] -shards count [-shard-memory megabytes]\n"
+	+ "                      [-shard-dir dir] [-save index] (file | -) [file ...]\n"
+	+ "       java WordFreqs -compare path path [path ...]\n"
+	+ "       java WordFreqs [-k count | -all] -load index [index ...]\n"
+	+ "       java WordFreqs [-k count | -all] -merge output index [index ...]\n"
+	+ "       java WordFreqs [-k count] -stream [-every words] [-interval seconds]\n"
+	+ "                      [-window words | -window-seconds seconds] [file | -]\n"
+	+ "       java WordFreqs [-k count] -follow [-every words] [-interval seconds]\n"
+	+ "                      [-window words | -window-seconds seconds] file\n"
+	+ "Any of these also takes -metrics file (or - for standard error).\n"
+	+ "Runs that count text also take -stop file, -allow file, -n (all | kept) and\n"
+	+ "-unicode, except with -mmap, -batch, or -threads outside -pipeline.";
+	/** Seconds between streaming snapshots when neither -every nor -interval is given. */
+	private static final int DEFAULT_INTERVAL = 10;
+	private static final int DEFAULT_K = 20;
+	/** Megabytes used by -approx when -memory is not given. */
+	private static final int DEFAULT_MEMORY = 64;
+
+	private String input_path;
+	/** Paths after the first, allowed only in batch runs and when reading indexes. */
+	private ArrayList<String> more_paths;
+	private int top_k;
+	private boolean full_sort;
+	private boolean mapped;
+	private int threads;
+	private boolean streaming;
+	private boolean following;
+	private int snapshot_words;
+	private int snapshot_seconds;
+	private int window_words;
+	private int window_seconds;
+	private boolean approximate;
+	private int memory_megabytes;
+	private String save_path;
+	private boolean loading;
+	private String merge_path;
+	private boolean batch;
+	private boolean per_file;
+	private boolean pipeline;
+	private int offheap_megabytes;
+	private int ngram;
+	private int shards;
+	private String shard_dir;
+	private int shard_megabytes;
+	private boolean comparing;
+	private String stop_path;
+	private String allow_path;
+	private boolean count_kept;
+	private boolean unicode;
+	private String metrics_path;
+
+	private WordFreqsOptions() {
+		input_path = null;
+		more_paths = new ArrayList<String>();
+		top_k = DEFAULT_K;
+		full_sort = false;
+		mapped = false;
+		threads = 0;
+		streaming = false;
+		following = false;
+		snapshot_words = 0;
+		snapshot_seconds = 0;
+		window_words = 0;
+		window_seconds = 0;
+		approximate = false;
+		memory_megabytes = 0;
+		save_path = null;
+		loading = false;
+		merge_path = null;
+		batch = false;
+		per_file = false;
+		pipeline = false;
+		offheap_megabytes = 0;
+		ngram = 0;
+		shards = 0;
+		shard_dir = null;
+		shard_megabytes = 0;
+		comparing = false;
+		stop_path = null;
+		allow_path = null;
+		count_kept = false;
+		unicode = false;
+		metrics_path = null;
+	}
+
+	/** Parses the command line arguments.
+	  * @throws IllegalArgumentException if the arguments are not valid.
+	  */
+	public static WordFreqsOptions parse(String[] args) {
+		WordFreqsOptions options = new WordFreqsOptions();
+		int i = 0;
+		while (i < args.length) {
+			String arg = args[i];
+			if (arg.equals("-k")) {
+				options.top_k = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-all")) {
+				options.full_sort = true;
+				i++;
+			} else if (arg.equals("-mmap")) {
+				options.mapped = true;
+				i++;
+			} else if (arg.equals("-threads")) {
+				options.threads = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-stream")) {
+				options.streaming = true;
+				i++;
+			} else if (arg.equals("-follow")) {
+				options.streaming = true;
+				options.following = true;
+				i++;
+			} else if (arg.equals("-every")) {
+				options.snapshot_words = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-interval")) {
+				options.snapshot_seconds = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-window")) {
+				options.window_words = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-window-seconds")) {
+				options.window_seconds = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-approx")) {
+				options.approximate = true;
+				i++;
+			} else if (arg.equals("-memory")) {
+				options.memory_megabytes = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-save")) {
+				options.save_path = nextArg(args, i);
+				i += 2;
+			} else if (arg.equals("-load")) {
+				options.loading = true;
+				i++;
+			} else if (arg.equals("-merge")) {
+				options.merge_path = nextArg(args, i);
+				i += 2;
+			} else if (arg.equals("-batch")) {
+				options.batch = true;
+				i++;
+			} else if (arg.equals("-pipeline")) {
+				options.pipeline = true;
+				i++;
+			} else if (arg.equals("-offheap")) {
+				options.offheap_megabytes = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-ngram")) {
+				options.ngram = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-shards")) {
+				options.shards = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-shard-dir")) {
+				options.shard_dir = nextArg(args, i);
+				i += 2;
+			} else if (arg.equals("-shard-memory")) {
+				options.shard_megabytes = parsePositive(arg, nextArg(args, i));
+				i += 2;
+			} else if (arg.equals("-compare")) {
+				options.comparing = true;
+				i++;
+			} else if (arg.equals("-stop")) {
+				options.stop_path = nextArg(args, i);
+				i += 2;
+			} else if (arg.equals("-allow")) {
+				options.allow_path = nextArg(args, i);
+				i += 2;
+			} else if (arg.equals("-n")) {
+				String base = nextArg(args, i);
+				if (!base.equals("all") && !base.equals("kept")) {
+					throw new IllegalArgumentException("-n must be all or kept, not " + base);
+				}
+				options.count_kept = base.equals("kept");
+				i += 2;
+			} else if (arg.equals("-unicode")) {
+				options.unicode = true;
+				i++;
+			} else if (arg.equals("-metrics")) {
+				options.metrics_path = nextArg(args, i);
+				i += 2;
+			} else if (arg.equals("-per-file")) {
+				options.per_file = true;
+				i++;
+			} else if (arg.startsWith("-") && arg.length() > 1) {
+				throw new IllegalArgumentException("Unknown option " + arg);
+			} else if (options.input_path == null) {
+				options.input_path = arg;
+				i++;
+			} else {
+				options.more_paths.add(arg);
+				i++;
+			}
+		}
+		if (options.batch) {
+			options.checkBatch();
+		} else if (options.per_file) {
+			throw new IllegalArgumentException("-per-file needs -batch");
+		}
+		if (options.pipeline) {
+			options.checkPipeline();
+		}
+		if (options.offheap_megabytes > 0) {
+			options.checkOffHeap();
+		}
+		if (options.ngram > 0) {
+			options.checkNGram();
+		}
+		if (options.shards > 0) {
+			options.checkShards();
+		} else if (options.shard_dir != null || options.shard_megabytes > 0) {
+			throw new IllegalArgumentException("-shard-dir and -shard-memory need -shards");
+		}
+		if (options.comparing) {
+			options.checkCompare();
+		}
+		if (options.stop_path != null || options.allow_path != null || options.unicode) {
+			options.checkTokenizing();
+		}
+		if (options.loading || options.merge_path != null) {
+			options.checkIndexes();
+		} else if (options.batch || options.pipeline || options.shards > 0 || options.comparing) {
+			/** Batch, pipeline, sharded and compare runs take any number of paths. */
+		} else if (!options.more_paths.isEmpty()) {
+			throw new IllegalArgumentException("Unexpected argument " + options.more_paths.get(0));
+		} else if (options.save_path != null && (options.approximate || options.streaming)) {
+			throw new IllegalArgumentException("-save cannot be used with -approx or -stream");
+		}
+		if (options.approximate) {
+			options.checkApproximate();
+		} else if (options.memory_megabytes > 0) {
+			throw new IllegalArgumentException("-memory needs -approx");
+		}
+		if (options.streaming) {
+			options.checkStreaming();
+		} else if (options.snapshot_words > 0 || options.snapshot_seconds > 0) {
+			throw new IllegalArgumentException("-every and -interval need -stream or -follow");
+		} else if (options.window_words > 0 || options.window_seconds > 0) {
+			throw new IllegalArgumentException("-window and -window-seconds need -stream or -follow");
+		} else if (options.input_path == null) {
+			throw new IllegalArgumentException("No input file given");
+		}
+		return options;
+	}
+
+	/** Checks the options of a batch run. */
+	private void checkBatch() {
+		if (mapped || approximate || streaming || loading || merge_path != null) {
+			throw new IllegalArgumentException("-batch cannot be used with -mmap, -approx, -stream, -load or -merge");
+		}
+		if (input_path == null) {
+			throw new IllegalArgumentException("No input files given");
+		}
+	}
+
+	/** Checks the options of a pipelined run. */
+	private void checkPipeline() {
+		if (mapped || approximate || streaming || batch || loading || merge_path != null) {
+			throw new IllegalArgumentException("-pipeline cannot be used with -mmap, -approx, -stream, "
+			+ "-batch, -load or -merge");
+		}
+		if (input_path == null) {
+			throw new IllegalArgumentException("No input file given");
+		}
+	}
+
+	/** Checks the options of a run that counts into native memory. */
+	private void checkOffHeap() {
+		if (mapped || threads > 1 || approximate || streaming || batch || pipeline || loading
+		|| merge_path != null) {
+			throw new IllegalArgumentException("-offheap cannot be used with -mmap, -threads, -approx, "
+			+ "-stream, -batch, -pipeline, -load or -merge");
+		}
+	}
+
+	/** Checks the options of a run that counts n-grams. */
+	private void checkNGram() {
+		if (mapped || threads > 1 || approximate || streaming || batch || pipeline || offheap_megabytes > 0
+		|| loading || merge_path != null) {
+			throw new IllegalArgumentException("-ngram cannot be used with -mmap, -threads, -approx, "
+			+ "-stream, -batch, -pipeline, -offheap, -load or -merge");
+		}
+	}
+
+	/** Checks the options of a run that counts in shard worker processes. */
+	private void checkShards() {
+		if (mapped || threads > 1 || approximate || streaming || batch || pipeline || offheap_megabytes > 0
+		|| ngram > 0 || comparing || loading || merge_path != null) {
+			throw new IllegalArgumentException("-shards cannot be used with -mmap, -threads, -approx, "
+			+ "-stream, -batch, -pipeline, -offheap, -ngram, -compare, -load or -merge");
+		}
+		if (input_path == null) {
+			throw new IllegalArgumentException("No input file given");
+		}
+	}
+
+	/** Checks the options of a run that compares vocabularies. */
+	private void checkCompare() {
+		if (mapped || threads > 1 || approximate || streaming || batch || pipeline || offheap_megabytes > 0
+		|| ngram > 0 || loading || merge_path != null || save_path != null) {
+			throw new IllegalArgumentException("-compare cannot be used with -mmap, -threads, -approx, "
+			+ "-stream, -batch, -pipeline, -offheap, -ngram, -load, -merge or -save");
+		}
+		if (input_path == null) {
+			throw new IllegalArgumentException("No input files given");
+		}
+	}
+
+	/** Checks the options of a run that filters words or tokenizes in Unicode mode.
+	  * The byte-level tokenizers of -mmap, -batch and -threads outside -pipeline do
+	  * neither.
+	  */
+	private void checkTokenizing() {
+		if (mapped || (threads > 1 && !pipeline) || batch || loading || merge_path != null) {
+			throw new IllegalArgumentException("-stop, -allow and -unicode cannot be used with -mmap, -batch, "
+			+ "-load, -merge, or -threads outside -pipeline");
+		}
+	}
+
+	/** Checks the options of a run that reads saved indexes. */
+	private void checkIndexes() {
+		if (loading && merge_path != null) {
+			throw new IllegalArgumentException("Use only one of -load and -merge");
+		}
+		if (mapped || threads > 1 || approximate || streaming || save_path != null) {
+			throw new IllegalArgumentException("-load and -merge read indexes and cannot be used with "
+			+ "-mmap, -threads, -approx, -stream or -save");
+		}
+		if (input_path == null) {
+			throw new IllegalArgumentException("No index given");
+		}
+	}
+
+	/** Checks the options of an approximate run and fills in its defaults. */
+	private void checkApproximate() {
+		if (full_sort) {
+			throw new IllegalArgumentException("-all cannot be used with -approx");
+		}
+		if (mapped || threads > 1 || streaming) {
+			throw new IllegalArgumentException("-mmap, -threads and -stream cannot be used with -approx");
+		}
+		if (memory_megabytes == 0) {
+			memory_megabytes = DEFAULT_MEMORY;
+		}
+	}
+
+	/** Checks the options of a streaming run and fills in its defaults. */
+	private void checkStreaming() {
+		if (full_sort) {
+			throw new IllegalArgumentException("-all cannot be used when streaming");
+		}
+		if (mapped || threads > 1) {
+			throw new IllegalArgumentException("-mmap and -threads cannot be used when streaming");
+		}
+		if (window_words > 0 && window_seconds > 0) {
+			throw new IllegalArgumentException("Use only one of -window and -window-seconds");
+		}
+		if (following && (input_path == null || input_path.equals("-"))) {
+			throw new IllegalArgumentException("-follow needs a file");
+		}
+		if (input_path != null && input_path.equals("-")) {
+			input_path = null;
+		}
+		if (snapshot_words == 0 && snapshot_seconds == 0) {
+			snapshot_seconds = DEFAULT_INTERVAL;
+		}
+	}
+
+	private static String nextArg(String[] args, int i) {
+		if (i + 1 >= args.length) {
+			throw new IllegalArgumentException("Missing value for " + args[i]);
+		}
+		return args[i + 1];
+	}
+
+	private static int parsePositive(String option, String value) {
+		int number;
+		try {
+			number = Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+		}
+		if (number <= 0) {
+			throw new IllegalArgumentException(option + " must be positive: " + value);
+		}
+		return number;
+	}
+
+	/** Gets the path of the text file to count, or null to read standard input. */
+	public String getInputPath() {
+		return input_path;
+	}
+
+	/** Gets the number of words to print, or 0 if every word is printed. */
+	public int getTopK() {
+		if (full_sort) {
+			return 0;
+		}
+		return top_k;
+	}
+
+	/** Returns true if the file should be memory-mapped and counted byte by byte. */
+	public boolean isMapped() {
+		return mapped;
+	}
+
+	/** Gets the number of worker threads used to count a memory-mapped file. */
+	public int getThreads() {
+		return Math.max(1, threads);
+	}
+
+	/** Gets the number of worker threads of a batch or pipelined run: -threads, or
+	  * one per processor if it was not given.
+	  */
+	public int getBatchWorkers() {
+		if (threads == 0) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		return threads;
+	}
+
+	/** Returns true if many files, directories or globs are counted together. */
+	public boolean isBatch() {
+		return batch;
+	}
+
+	/** Returns true if a batch run also prints the top words of every file. */
+	public boolean isPerFile() {
+		return per_file;
+	}
+
+	/** Returns true if reading, tokenizing and counting run as concurrent stages. */
+	public boolean isPipeline() {
+		return pipeline;
+	}
+
+	/** Returns true if counts are printed as the input arrives. */
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/** Returns true if the input file is followed as it grows, like tail -f. */
+	public boolean isFollowing() {
+		return following;
+	}
+
+	/** Gets the number of words between streaming snapshots, or 0 if unused. */
+	public int getSnapshotWords() {
+		return snapshot_words;
+	}
+
+	/** Gets the number of seconds between streaming snapshots, or 0 if unused. */
+	public int getSnapshotSeconds() {
+		return snapshot_seconds;
+	}
+
+	/** Gets the number of most recent words counted in a streaming run, or 0 if
+	  * every word is counted.
+	  */
+	public int getWindowWords() {
+		return window_words;
+	}
+
+	/** Gets the number of most recent seconds counted in a streaming run, or 0 if
+	  * every word is counted.
+	  */
+	public int getWindowSeconds() {
+		return window_seconds;
+	}
+
+	/** Returns true if words are counted approximately in a fixed amount of memory. */
+	public boolean isApproximate() {
+		return approximate;
+	}
+
+	/** Gets the memory budget of an approximate run, in bytes. */
+	public long getMemoryBytes() {
+		return memory_megabytes * 1024L * 1024L;
+	}
+
+	/** Gets the native memory limit of the off-heap dictionary, in bytes, or 0 if the
+	  * words are counted on the heap.
+	  */
+	public long getOffHeapBytes() {
+		return offheap_megabytes * 1024L * 1024L;
+	}
+
+	/** Gets the number of consecutive words counted together, or 0 if single words
+	  * are counted.
+	  */
+	public int getNGram() {
+		return ngram;
+	}
+
+	/** Gets the number of worker processes the vocabulary is split across, or 0 if
+	  * words are counted in this process.
+	  */
+	public int getShards() {
+		return shards;
+	}
+
+	/** Gets the heap limit of each shard worker, in megabytes, or 0 for the JVM's
+	  * default.
+	  */
+	public int getShardMegabytes() {
+		return shard_megabytes;
+	}
+
+	/** Gets the directory the shard files are kept in, or null if they are written
+	  * to a temporary directory and deleted when the run ends.
+	  */
+	public String getShardDirectory() {
+		return shard_dir;
+	}
+
+	/** Returns true if the vocabularies of the input files are compared instead of
+	  * their words being ranked.
+	  */
+	public boolean isComparing() {
+		return comparing;
+	}
+
+	/** Gets the path of the list of words to drop, or null. */
+	public String getStopPath() {
+		return stop_path;
+	}
+
+	/** Gets the path of the list of the only words to keep, or null. */
+	public String getAllowPath() {
+		return allow_path;
+	}
+
+	/** Returns true if frequencies are divided by the number of words kept by -stop
+	  * and -allow rather than by every word of the text.
+	  */
+	public boolean isCountingKept() {
+		return count_kept;
+	}
+
+	/** Returns true if words may be in any script, case folded and in NFC, rather
+	  * than only ASCII letters.
+	  */
+	public boolean isUnicode() {
+		return unicode;
+	}
+
+	/** Gets the path to save the counted words to as an index, or null. */
+	public String getSavePath() {
+		return save_path;
+	}
+
+	/** Returns true if the input paths are saved indexes to print instead of text. */
+	public boolean isLoading() {
+		return loading;
+	}
+
+	/** Gets the path of the index the input indexes are merged into, or null. */
+	public String getMergePath() {
+		return merge_path;
+	}
+
+	/** Gets every input path. More than one is only allowed for -batch, -pipeline,
+	  * -shards, -compare, -load and -merge.
+	  */
+	public String[] getInputPaths() {
+		String[] paths = new String[1 + more_paths.size()];
+		paths[0] = input_path;
+		for (int i = 0; i < more_paths.size(); i++) {
+			paths[i + 1] = more_paths.get(i);
+		}
+		return paths;
+	}
+
+	/** Gets where the metrics summary is written, "-" for standard error, or null if
+	  * no summary was asked for.
+	  */
+	public String getMetricsPath() {
+		return metrics_path;
+	}
+}